@@ -0,0 +1,51 @@
+package kazusa.benchmark;
+
+import kazusa.common.codeoptimize.operateinterface.OperateReturn;
+
+import java.util.Arrays;
+
+/**
+ * 基准测试:预热若干轮后测量若干轮,输出每秒操作数中位数、最小值与最大值
+ * 建议以固定JVM参数运行,如:java -Xms1g -Xmx1g -XX:+UseParallelGC -cp classes kazusa.benchmark.ThreadPoolBenchmark
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class Benchmark {
+
+	/**
+	 * 预热轮数
+	 */
+	private final int warmups;
+
+	/**
+	 * 测量轮数
+	 */
+	private final int iterations;
+
+	public Benchmark(int warmups, int iterations) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @param name 测试名
+	 * @param trial 单轮测试:返回本轮完成操作数
+	 * @return 返回每秒操作数中位数
+	 * @throws Exception
+	 */
+	public double run(String name, OperateReturn<Long> trial) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			trial.operateReturnImpl();
+		}
+		double[] throughputs = new double[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			long ops = trial.operateReturnImpl();
+			throughputs[i] = ops * 1e9 / (System.nanoTime() - start);
+		}
+		Arrays.sort(throughputs);
+		double median = throughputs[iterations / 2];
+		System.out.printf("%-40s %,15.0f ops/s (min %,.0f, max %,.0f)%n", name, median, throughputs[0], throughputs[iterations - 1]);
+		return median;
+	}
+}
@@ -0,0 +1,87 @@
+package kazusa.benchmark;
+
+import kazusa.common.connectpool.CustomConnectPool;
+import kazusa.common.metrics.Histogram;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 连接池基准测试:以本地假链接测量CustomConnectPool借出归还吞吐量与延迟
+ * 线程数从1倍增至最大线程数,线程数超过资源数时测量等待资源的开销
+ * 运行:java -cp classes kazusa.benchmark.ConnectPoolBenchmark [每线程操作数] [测量轮数] [资源数] [最大线程数]
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class ConnectPoolBenchmark {
+
+	/**
+	 * 假链接:创建无IO开销
+	 */
+	static final class FakeConnection {
+
+		private static final AtomicInteger ID = new AtomicInteger(0);
+
+		private final int id = ID.incrementAndGet();
+
+		private long uses;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int ops = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int cpuCores = Runtime.getRuntime().availableProcessors();
+		int resources = args.length > 2 ? Integer.parseInt(args[2]) : cpuCores;
+		int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : 4 * cpuCores;
+		Benchmark benchmark = new Benchmark(3,iterations);
+		for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+			int n = threads;
+			AtomicReference<Histogram> latency = new AtomicReference<>();
+			benchmark.run("借出归还 " + resources + "资源 " + n + "线程",() -> borrow(resources,n,ops,latency));
+			System.out.println("    延迟(纳秒):" + latency.get().snapshot());
+		}
+	}
+
+	/**
+	 * 多线程循环借出归还
+	 * @param resources 资源数
+	 * @param threads 线程数
+	 * @param ops 每线程操作数
+	 * @param latency 本轮借出至归还延迟
+	 * @return 返回本轮总操作数
+	 */
+	private static long borrow(int resources,int threads,int ops,AtomicReference<Histogram> latency) throws Exception {
+		CustomConnectPool<FakeConnection> pool = new CustomConnectPool<FakeConnection>(FakeConnection::new,resources,resources,threads) {};
+		// 触发初始化,不计入测量
+		pool.setConnection(pool.getConnection());
+		Histogram histogram = new Histogram();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		AtomicReference<Exception> error = new AtomicReference<>();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < ops; i++) {
+						long begin = System.nanoTime();
+						FakeConnection connection = pool.getConnection();
+						connection.uses++;
+						pool.setConnection(connection);
+						histogram.record(System.nanoTime() - begin);
+					}
+				} catch (Exception e) {
+					error.compareAndSet(null,e);
+				} finally {
+					done.countDown();
+				}
+			},"借出-" + t).start();
+		}
+		start.countDown();
+		done.await();
+		pool.cancelScheduled();
+		if (error.get() != null) throw error.get();
+		latency.set(histogram);
+		return (long) threads * ops;
+	}
+}
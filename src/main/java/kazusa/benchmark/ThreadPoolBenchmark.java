@@ -0,0 +1,163 @@
+package kazusa.benchmark;
+
+import kazusa.thread.ThreadUtil;
+import kazusa.thread.threadpool.NamedThreadFactory;
+import kazusa.thread.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程池基准测试:对比ThreadUtil.ThreadPoolFactory各模式(jdk即CustomConfigThreadPool,自定义即CustomThreadPool)与自定义工作窃取、自适应模式
+ * 1、平铺:1个与cpu核心数个外部线程并发提交空任务、小任务与大任务
+ * 2、分治:每个任务在工作线程内再提交若干子任务
+ * 运行:java -cp classes kazusa.benchmark.ThreadPoolBenchmark [任务数] [测量轮数] [模式,逗号分隔]
+ * 虚拟线程模式在JDK21以下退化为有界平台线程池,未指定模式时跳过
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class ThreadPoolBenchmark {
+
+	/**
+	 * 防止计算被优化掉
+	 */
+	private static volatile long sink;
+
+	/**
+	 * 全部模式
+	 */
+	static final String[] MODES = {"单线程","多线程","工厂","扩容","jdk","自定义","多队列","虚拟线程","工作窃取","自适应"};
+
+	/**
+	 * 任务大小:每个任务计算轮数
+	 */
+	private static final int[] SIZES = {0,64,4096};
+
+	private static final String[] SIZE_NAMES = {"空任务","小任务","大任务"};
+
+	public static void main(String[] args) throws Exception {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		List<String> modes = new ArrayList<>(Arrays.asList(MODES));
+		if (args.length > 2) modes = Arrays.asList(args[2].split(","));
+		else if (!NamedThreadFactory.isVirtualSupported()) modes.remove("虚拟线程");
+		Benchmark benchmark = new Benchmark(3,iterations);
+		int cpuCores = Runtime.getRuntime().availableProcessors();
+		int[] producers = cpuCores > 1 ? new int[]{1,cpuCores} : new int[]{1};
+		for (String mode : modes) {
+			for (int i = 0; i < SIZES.length; i++) {
+				int rounds = SIZES[i];
+				// 大任务按计算量缩减任务数,使各轮耗时相近
+				int count = Math.max(1,rounds > 64 ? tasks / (rounds / 64) : tasks);
+				for (int producer : producers) {
+					benchmark.run(mode + " 平铺 " + SIZE_NAMES[i] + " " + producer + "生产者",() -> flat(mode,cpuCores,count,rounds,producer));
+				}
+			}
+			benchmark.run(mode + " 分治",() -> fork(mode,cpuCores,tasks));
+		}
+	}
+
+	/**
+	 * @param mode 线程池模式
+	 * @param threads 线程数
+	 * @return 返回线程池,队列均为无界队列
+	 */
+	static ExecutorService newPool(String mode,int threads) {
+		ThreadPool threadPool = new ThreadPool(threads,threads,new LinkedBlockingQueue<>());
+		if (mode.equals("工作窃取")) {
+			threadPool.setWorkStealing(true);
+			return ThreadUtil.ThreadPoolFactory("自定义",threadPool);
+		}
+		if (mode.equals("自适应")) {
+			// 自适应模式在1至2倍线程数之间调整
+			threadPool = new ThreadPool(1,2 * threads,new LinkedBlockingQueue<>());
+			threadPool.setAdaptive(true);
+			return ThreadUtil.ThreadPoolFactory("自定义",threadPool);
+		}
+		ExecutorService executorService = ThreadUtil.ThreadPoolFactory(mode,threadPool);
+		if (executorService == null) throw new IllegalArgumentException("未知线程池模式:" + mode);
+		return executorService;
+	}
+
+	/**
+	 * 细粒度计算任务
+	 * @param seed 种子
+	 */
+	static void work(long seed) {
+		work(seed,64);
+	}
+
+	/**
+	 * 计算任务
+	 * @param seed 种子
+	 * @param rounds 计算轮数
+	 */
+	static void work(long seed,int rounds) {
+		long x = seed;
+		for (int i = 0; i < rounds; i++) {
+			x ^= x << 13;
+			x ^= x >>> 7;
+			x ^= x << 17;
+		}
+		if (x == 0) sink = x;
+	}
+
+	/**
+	 * 多个外部线程平铺提交任务
+	 * @param producers 提交任务线程数
+	 */
+	private static long flat(String mode,int threads,int tasks,int rounds,int producers) throws Exception {
+		ExecutorService executor = newPool(mode,threads);
+		CountDownLatch countDownLatch = new CountDownLatch(tasks);
+		Thread[] submitters = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			int from = (int) ((long) tasks * p / producers);
+			int to = (int) ((long) tasks * (p + 1) / producers);
+			submitters[p] = new Thread(() -> {
+				for (int i = from; i < to; i++) {
+					long seed = i;
+					executor.execute(() -> {
+						work(seed,rounds);
+						countDownLatch.countDown();
+					});
+				}
+			},"生产者-" + p);
+			submitters[p].start();
+		}
+		for (Thread submitter : submitters) {
+			submitter.join();
+		}
+		if (!countDownLatch.await(5,TimeUnit.MINUTES)) throw new IllegalStateException(mode + "未在5分钟内完成");
+		executor.shutdownNow();
+		return tasks;
+	}
+
+	/**
+	 * 每个任务提交16个子任务
+	 */
+	private static long fork(String mode,int threads,int tasks) throws Exception {
+		ExecutorService executor = newPool(mode,threads);
+		int parents = Math.max(1,tasks / 16);
+		CountDownLatch countDownLatch = new CountDownLatch(parents * 16);
+		for (int i = 0; i < parents; i++) {
+			long seed = i;
+			executor.execute(() -> {
+				for (int j = 0; j < 16; j++) {
+					long child = seed * 16 + j;
+					executor.execute(() -> {
+						work(child);
+						countDownLatch.countDown();
+					});
+				}
+			});
+		}
+		if (!countDownLatch.await(5,TimeUnit.MINUTES)) throw new IllegalStateException(mode + "未在5分钟内完成");
+		executor.shutdownNow();
+		return (long) parents * 16;
+	}
+}
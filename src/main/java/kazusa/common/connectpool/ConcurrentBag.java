@@ -0,0 +1,331 @@
+package kazusa.common.connectpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁资源包:线程本地缓存 + 共享列表,借出归还全程CAS无锁
+ * 参考HikariCP ConcurrentBag:同一线程优先复用自己归还过的资源,其次扫描共享列表,最后登记等待归还方移交
+ * 资源对象需保持equals/hashCode为对象身份语义,归还时按资源对象查找条目
+ * @author kazusa
+ * @version 1.0.0
+ * @param <T> 资源类型
+ * @see CustomConnectPool
+ */
+public class ConcurrentBag<T> {
+
+	/**
+	 * 资源状态:空闲
+	 */
+	public static final int STATE_NOT_IN_USE = 0;
+
+	/**
+	 * 资源状态:借出
+	 */
+	public static final int STATE_IN_USE = 1;
+
+	/**
+	 * 资源状态:已移除
+	 */
+	public static final int STATE_REMOVED = -1;
+
+	/**
+	 * 资源状态:维护线程预留,借用方不可见
+	 */
+	public static final int STATE_RESERVED = -2;
+
+	/**
+	 * 线程本地缓存资源数上限
+	 */
+	private static final int THREAD_LIST_SIZE = 16;
+
+	/**
+	 * 共享列表:读多写少,新增移除资源时复制
+	 */
+	private final CopyOnWriteArrayList<Entry<T>> SHARED_LIST = new CopyOnWriteArrayList<>();
+
+	/**
+	 * 资源对象与条目映射
+	 */
+	private final ConcurrentHashMap<T,Entry<T>> ENTRIES = new ConcurrentHashMap<>();
+
+	/**
+	 * 线程本地缓存:记录当前线程归还过的资源
+	 */
+	private final ThreadLocal<List<Entry<T>>> THREAD_LIST = ThreadLocal.withInitial(() -> new ArrayList<>(THREAD_LIST_SIZE));
+
+	/**
+	 * 等待资源借用方数
+	 */
+	private final AtomicInteger WAITERS = new AtomicInteger(0);
+
+	/**
+	 * 移交队列:公平模式,归还资源直接移交等待最久的借用方
+	 */
+	private final SynchronousQueue<Entry<T>> HANDOFF_QUEUE = new SynchronousQueue<>(true);
+
+	/**
+	 * 资源条目
+	 * @param <T> 资源类型
+	 */
+	public static class Entry<T> {
+
+		private final T value;
+
+		/**
+		 * 是否为核心资源
+		 */
+		private final boolean core;
+
+		private final AtomicInteger state;
+
+		/**
+		 * 创建时间:纳秒
+		 */
+		private final long createTime = System.nanoTime();
+
+		/**
+		 * 最近归还时间:纳秒
+		 */
+		private volatile long lastAccessed = createTime;
+
+		/**
+		 * 当前租约:空闲时为null
+		 */
+		private volatile Lease<T> lease;
+
+		private Entry(T value, boolean core, int state) {
+			this.value = value;
+			this.core = core;
+			this.state = new AtomicInteger(state);
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		public boolean isCore() {
+			return core;
+		}
+
+		public int getState() {
+			return state.get();
+		}
+
+		public long getCreateTime() {
+			return createTime;
+		}
+
+		public long getLastAccessed() {
+			return lastAccessed;
+		}
+
+		public Lease<T> getLease() {
+			return lease;
+		}
+
+		void setLease(Lease<T> lease) {
+			this.lease = lease;
+		}
+
+		private boolean compareAndSet(int expect, int update) {
+			return state.compareAndSet(expect,update);
+		}
+
+		/**
+		 * 空闲资源借出
+		 * @return 借出成功返回true
+		 */
+		private boolean tryBorrow() {
+			return state.compareAndSet(STATE_NOT_IN_USE,STATE_IN_USE);
+		}
+	}
+
+	/**
+	 * 借出空闲资源
+	 * @return 资源条目,无空闲资源返回null
+	 */
+	public Entry<T> borrow() {
+		// 优先从线程本地缓存借出,倒序遍历取最近归还资源
+		List<Entry<T>> list = THREAD_LIST.get();
+		for (int i = list.size() - 1; i >= 0; i--) {
+			Entry<T> entry = list.remove(i);
+			if (entry.tryBorrow()) return entry;
+		}
+		// 扫描共享列表
+		for (Entry<T> entry : SHARED_LIST) {
+			if (entry.tryBorrow()) return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * 限时借出资源:无空闲资源时登记等待,由归还方直接移交
+	 * @param timeout 等待时间
+	 * @param timeUnit 等待时间单位
+	 * @return 资源条目,超时返回null
+	 * @throws InterruptedException
+	 */
+	public Entry<T> borrow(long timeout, TimeUnit timeUnit) throws InterruptedException {
+		Entry<T> entry = borrow();
+		if (entry != null) return entry;
+		WAITERS.incrementAndGet();
+		try {
+			// 登记等待后重新扫描,避免错过登记前归还的资源
+			for (Entry<T> e : SHARED_LIST) {
+				if (e.tryBorrow()) return e;
+			}
+			long nanos = timeUnit.toNanos(timeout);
+			while (nanos > 0) {
+				long start = System.nanoTime();
+				entry = HANDOFF_QUEUE.poll(nanos,TimeUnit.NANOSECONDS);
+				if (entry == null) return null;
+				// 移交途中可能被其他借用方抢先借出
+				if (entry.tryBorrow()) return entry;
+				nanos -= System.nanoTime() - start;
+			}
+			return null;
+		} finally {
+			WAITERS.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 归还资源:存在等待借用方时直接移交,否则放入线程本地缓存
+	 * @param value 资源对象
+	 * @return 资源已被移除或不属于该资源包返回false
+	 */
+	public boolean requite(T value) {
+		Entry<T> entry = ENTRIES.get(value);
+		if (entry == null || entry.getState() != STATE_IN_USE) return false;
+		entry.lastAccessed = System.nanoTime();
+		if (!entry.compareAndSet(STATE_IN_USE,STATE_NOT_IN_USE)) return false;
+		if (handoff(entry)) return true;
+		List<Entry<T>> list = THREAD_LIST.get();
+		if (list.size() < THREAD_LIST_SIZE) list.add(entry);
+		return true;
+	}
+
+	/**
+	 * 将空闲资源移交等待借用方
+	 * @param entry 资源条目
+	 * @return 已被借出或移交成功返回true
+	 */
+	private boolean handoff(Entry<T> entry) {
+		for (int i = 0; WAITERS.get() > 0; i++) {
+			if (entry.getState() != STATE_NOT_IN_USE || HANDOFF_QUEUE.offer(entry)) return true;
+			// 借用方登记后尚未进入移交队列,短暂让出cpu
+			if ((i & 0xff) == 0xff) LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+			else Thread.yield();
+		}
+		return false;
+	}
+
+	/**
+	 * 添加资源
+	 * @param value 资源对象
+	 * @param core 是否为核心资源
+	 * @param state 初始状态:空闲或直接借出
+	 * @return 资源条目
+	 */
+	public Entry<T> add(T value, boolean core, int state) {
+		Entry<T> entry = new Entry<>(value,core,state);
+		ENTRIES.put(value,entry);
+		SHARED_LIST.add(entry);
+		if (state == STATE_NOT_IN_USE) handoff(entry);
+		return entry;
+	}
+
+	/**
+	 * 移除借出或预留状态资源
+	 * @param entry 资源条目
+	 * @return 移除成功返回true
+	 */
+	public boolean remove(Entry<T> entry) {
+		if (!entry.compareAndSet(STATE_IN_USE,STATE_REMOVED) && !entry.compareAndSet(STATE_RESERVED,STATE_REMOVED)) return false;
+		ENTRIES.remove(entry.getValue(),entry);
+		SHARED_LIST.remove(entry);
+		return true;
+	}
+
+	/**
+	 * 预留空闲资源,预留期间借用方不可见
+	 * @param entry 资源条目
+	 * @return 预留成功返回true
+	 */
+	public boolean reserve(Entry<T> entry) {
+		return entry.compareAndSet(STATE_NOT_IN_USE,STATE_RESERVED);
+	}
+
+	/**
+	 * 取消预留,资源重新可借出
+	 * @param entry 资源条目
+	 * @return 取消成功返回true
+	 */
+	public boolean unreserve(Entry<T> entry) {
+		return entry.compareAndSet(STATE_RESERVED,STATE_NOT_IN_USE);
+	}
+
+	/**
+	 * @param value 资源对象
+	 * @return 资源条目,不存在返回null
+	 */
+	public Entry<T> getEntry(T value) {
+		return ENTRIES.get(value);
+	}
+
+	/**
+	 * @param state 资源状态
+	 * @return 返回指定状态资源条目快照
+	 */
+	public List<Entry<T>> values(int state) {
+		List<Entry<T>> entries = new ArrayList<>();
+		for (Entry<T> entry : SHARED_LIST) {
+			if (entry.getState() == state) entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * @return 返回全部未移除资源条目快照
+	 */
+	public List<Entry<T>> values() {
+		List<Entry<T>> entries = new ArrayList<>();
+		for (Entry<T> entry : SHARED_LIST) {
+			if (entry.getState() != STATE_REMOVED) entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * @param state 资源状态
+	 * @return 返回指定状态资源数
+	 */
+	public int getCount(int state) {
+		int count = 0;
+		for (Entry<T> entry : SHARED_LIST) {
+			if (entry.getState() == state) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return 返回等待资源借用方数
+	 */
+	public int getWaiters() {
+		return WAITERS.get();
+	}
+
+	/**
+	 * @return 返回资源包内资源总数
+	 */
+	public int size() {
+		return SHARED_LIST.size();
+	}
+}
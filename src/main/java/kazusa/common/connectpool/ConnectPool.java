@@ -1,12 +1,16 @@
 package kazusa.common.connectpool;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public interface ConnectPool<T> {
 
 	/**
-	 * 默认采用周期性更新连接池存在所有核心资源
-	 * @param connections 记录核心资源集合
+	 * 后台周期性校验一批空闲资源
+	 * @param connections 待校验空闲资源集合
+	 * @return 返回有效资源集合,集合中新增资源放入连接池
 	 */
 	List<T> updateConnections(List<T> connections);
 
@@ -16,6 +20,49 @@ public interface ConnectPool<T> {
 	 */
 	T getConnection() throws Exception;
 
+	/**
+	 * @param timeout 无可用资源时等待时间
+	 * @param timeUnit 等待时间单位
+	 * @return 返回一个链接
+	 * @throws Exception
+	 */
+	T getConnection(long timeout, TimeUnit timeUnit) throws Exception;
+
+	/**
+	 * @return 返回异步链接对象,资源可用时完成
+	 */
+	CompletableFuture<T> getConnectionAsync();
+
+	/**
+	 * @param timeout 无可用资源时等待时间
+	 * @param timeUnit 等待时间单位
+	 * @return 返回异步链接对象,资源可用时完成,超时以TimeoutException异常完成
+	 */
+	CompletableFuture<T> getConnectionAsync(long timeout, TimeUnit timeUnit);
+
+	/**
+	 * 异步借出链接执行操作,操作完成后自动归还
+	 * @param function 使用链接的异步操作
+	 * @return 返回异步操作结果
+	 */
+	default <R> CompletableFuture<R> withConnection(Function<T, CompletableFuture<R>> function) {
+		return getConnectionAsync().thenCompose(connection -> {
+			CompletableFuture<R> future;
+			try {
+				future = function.apply(connection);
+			} catch (Throwable e) {
+				setConnection(connection);
+				return CompletableFuture.failedFuture(e);
+			}
+			// 操作返回null时先归还链接再失败
+			if (future == null) {
+				setConnection(connection);
+				return CompletableFuture.failedFuture(new NullPointerException("异步操作返回null"));
+			}
+			return future.whenComplete((r, e) -> setConnection(connection));
+		});
+	}
+
 	/**
 	 * @param connection 归还链接
 	 */
@@ -0,0 +1,16 @@
+package kazusa.common.connectpool;
+
+/**
+ * @param <T> 自定义连接池资源校验接口
+ */
+@FunctionalInterface
+public interface ConnectionValidator<T> {
+
+	/**
+	 * @param connection 空闲资源
+	 * @return 资源有效返回true,无效资源将被剔除
+	 * @throws Exception 校验异常视为无效
+	 */
+	boolean isValid(T connection) throws Exception;
+
+}
@@ -2,21 +2,38 @@ package kazusa.common.connectpool;
 
 
 
-import kazusa.common.codeoptimize.CodeOptimizeUtil;
+import kazusa.common.metrics.Histogram;
 import kazusa.thread.ThreadUtil;
+import kazusa.thread.TimingWheel;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 自定义泛用连接池
- * 默认模板方法适用于资源为整个对象,资源对象封装的请重写资源更新方法updateConnections()和资源回收方法retrieve()
+ * 默认模板方法适用于资源为整个对象,资源对象封装的请重写资源校验方法updateConnections()、资源回收方法retrieve()和资源销毁方法destroy()
  */
 public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 
@@ -25,11 +42,6 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 	 */
 	private final ConnectionImpl<T> CONNECTION_IMPL;
 
-	/**
-	 * 链接对象
-	 */
-	private T connection;
-
 	/**
 	 * 核心资源数
 	 */
@@ -46,9 +58,9 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 	private static final int CPU_CORES = Runtime.getRuntime().availableProcessors();
 
 	/**
-	 * 链接队列
+	 * 资源包:借出归还无锁
 	 */
-	private BlockingQueue<T> connectionQueue;
+	private final ConcurrentBag<T> BAG = new ConcurrentBag<>();
 
 	/**
 	 * 请求队列
@@ -56,12 +68,7 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 	private BlockingQueue<Object> askQueue;
 
 	/**
-	 * 任务队列
-	 */
-	private BlockingQueue<T> taskQueue;
-
-	/**
-	 * 更新资源周期时间
+	 * 后台维护周期时间
 	 */
 	private long time = 60;
 
@@ -114,9 +121,7 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 		CONNECTION_IMPL = connectionImpl;
 		CORE_NATURAL_RESOURCES = coreNaturalResources;
 		MAX_NATURAL_RESOURCES = maxNaturalResources;
-		connectionQueue = new ArrayBlockingQueue<>(coreNaturalResources);
 		askQueue = new ArrayBlockingQueue<>(queueLength);
-		taskQueue = new ArrayBlockingQueue<>(maxNaturalResources);
 	}
 
 	public int getCORE_NATURAL_RESOURCES() {
@@ -129,13 +134,13 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 
 	/**
 	 * 自定义配置队列
+	 * 链接队列与任务队列已由资源包取代,仅请求队列生效
 	 * @param connectionQueue 链接队列
 	 * @param taskQueue 任务队列
 	 * @param askQueue 请求队列
 	 */
+	@Deprecated
 	public void setQueue(BlockingQueue<T> connectionQueue,BlockingQueue<T> taskQueue,BlockingQueue<Object> askQueue) {
-		this.connectionQueue = connectionQueue;
-		this.taskQueue = taskQueue;
 		this.askQueue = askQueue;
 	}
 
@@ -150,7 +155,7 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 	 * @return 获取当前连接池任务数
 	 */
 	public int getTaskSize() {
-		return taskQueue.size();
+		return BAG.getCount(ConcurrentBag.STATE_IN_USE);
 	}
 
 	public long getTime() {
@@ -169,53 +174,242 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 		this.timeUnit = timeUnit;
 	}
 
+	/**
+	 * 获取资源耗时
+	 */
+	private final Histogram ACQUIRE = new Histogram();
+
+	/**
+	 * 资源借出至归还时长
+	 */
+	private final Histogram USAGE = new Histogram();
+
+	/**
+	 * 创建资源耗时
+	 */
+	private final Histogram CREATION = new Histogram();
+
+	/**
+	 * 校验资源耗时
+	 */
+	private final Histogram VALIDATION = new Histogram();
+
+	/**
+	 * 进入等待的请求数
+	 */
+	private final LongAdder WAIT_COUNT = new LongAdder();
+
+	/**
+	 * 等待超时的请求数
+	 */
+	private final LongAdder TIMEOUT_COUNT = new LongAdder();
+
+	/**
+	 * @return 返回连接池指标快照
+	 */
+	public PoolMetrics getPoolMetrics() {
+		return new PoolMetrics(
+			BAG.getCount(ConcurrentBag.STATE_IN_USE),
+			BAG.getCount(ConcurrentBag.STATE_NOT_IN_USE),
+			BAG.getWaiters() + ASYNC_WAITERS.size(),
+			i.get(),
+			MAX_NATURAL_RESOURCES,
+			WAIT_COUNT.sum(),
+			TIMEOUT_COUNT.sum(),
+			ACQUIRE.snapshot(),
+			USAGE.snapshot(),
+			CREATION.snapshot(),
+			VALIDATION.snapshot()
+		);
+	}
+
+	/**
+	 * 注册JMX监控:kazusa.connectpool:type=CustomConnectPool,name=name
+	 * @param name 连接池名
+	 * @return 返回注册对象名,用于注销
+	 * @throws Exception
+	 */
+	public ObjectName registerMBean(String name) throws Exception {
+		ObjectName objectName = new ObjectName("kazusa.connectpool:type=" + getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new PoolMetricsMXBean() {
+			public int getActive() {return getPoolMetrics().getActive();}
+			public int getIdle() {return getPoolMetrics().getIdle();}
+			public int getPending() {return getPoolMetrics().getPending();}
+			public int getTotal() {return getPoolMetrics().getTotal();}
+			public int getMax() {return MAX_NATURAL_RESOURCES;}
+			public long getWaitCount() {return WAIT_COUNT.sum();}
+			public long getTimeoutCount() {return TIMEOUT_COUNT.sum();}
+			public long getAcquireCount() {return ACQUIRE.snapshot().getCount();}
+			public long getAcquireMean() {return ACQUIRE.snapshot().getMean();}
+			public long getAcquireP99() {return ACQUIRE.snapshot().getP99();}
+			public long getAcquireMax() {return ACQUIRE.snapshot().getMax();}
+			public long getUsageMean() {return USAGE.snapshot().getMean();}
+			public long getUsageP99() {return USAGE.snapshot().getP99();}
+			public long getCreationMean() {return CREATION.snapshot().getMean();}
+			public long getValidationMean() {return VALIDATION.snapshot().getMean();}
+		},objectName);
+		return objectName;
+	}
+
+	/**
+	 * 当前已创建资源数
+	 */
 	private AtomicInteger i = new AtomicInteger(0);
 
 	/**
-	 * 从链接实现对象中获取链接对象
-	 * @param CONNECTION_IMPL 链接实现对象
-	 * @return 链接对象
+	 * 占用一个资源名额
+	 * @return 已达最大资源数返回false
+	 */
+	private boolean increment() {
+		while (true) {
+			int count = i.get();
+			// 默认连接池最大资源数(核心资源数)为连接池数据源可提供资源数
+			if (count >= MAX_NATURAL_RESOURCES) return false;
+			if (i.compareAndSet(count,count + 1)) return true;
+		}
+	}
+
+	/**
+	 * 从链接实现对象中获取链接对象放入资源包
+	 * @param core 是否为核心资源
+	 * @param state 放入资源包时状态
+	 * @return 资源条目,已达最大资源数或链接实现对象无资源返回null
 	 * @throws Exception
 	 */
-	private T getConnection(ConnectionImpl<T> CONNECTION_IMPL) throws Exception {
-		// 默认连接池最大资源数(核心资源数)为连接池数据源可提供资源数
-		if (i.get() == MAX_NATURAL_RESOURCES) return null;
-		// +1
-		i.incrementAndGet();
-		return CONNECTION_IMPL.getConnection();
+	private ConcurrentBag.Entry<T> newEntry(boolean core,int state) throws Exception {
+		if (!increment()) return null;
+		T connection;
+		long start = System.nanoTime();
+		try {
+			connection = CONNECTION_IMPL.getConnection();
+		} catch (Exception e) {
+			i.decrementAndGet();
+			throw e;
+		} finally {
+			CREATION.record(System.nanoTime() - start);
+		}
+		if (connection == null) {
+			i.decrementAndGet();
+			return null;
+		}
+		ConcurrentBag.Entry<T> entry = BAG.add(connection,core,state);
+		if (state == ConcurrentBag.STATE_NOT_IN_USE) signalAsync();
+		return entry;
+	}
+
+	/**
+	 * 将已有链接对象放入资源包
+	 * @param connection 链接对象
+	 * @param core 是否为核心资源
+	 * @return 已达最大资源数返回false
+	 */
+	private boolean addEntry(T connection,boolean core) {
+		if (connection == null || !increment()) return false;
+		BAG.add(connection,core,ConcurrentBag.STATE_NOT_IN_USE);
+		signalAsync();
+		return true;
+	}
+
+	/**
+	 * 从资源包中移除资源并释放资源名额
+	 * @param entry 资源条目
+	 * @return 移除成功返回true
+	 */
+	private boolean removeEntry(ConcurrentBag.Entry<T> entry) {
+		if (!BAG.remove(entry)) return false;
+		i.decrementAndGet();
+		return true;
 	}
 
 	/**
 	 * 初始化连接池
 	 */
-	private void init() throws Exception {
-		// 创建核心资源数
-		for (int i = 0; i < CORE_NATURAL_RESOURCES; i++) {
-			connection = getConnection(CONNECTION_IMPL);
-			if (connection == null) throw new IllegalStateException("资源数不足创建对应数量核心资源");
-			connectionQueue.put(connection);
-		}
+	private synchronized void init() throws Exception {
+		if (!init) return;
+		// 并行创建核心资源,首个请求方获取最先创建完成的资源
+		if (!lazyInit) warmUp();
 		// 创建监控线程更新连接池链接
 		monitoringThread();
+		init = false;
+	}
+
+	/**
+	 * 懒加载:不预先创建核心资源,由请求按需创建至核心资源数
+	 */
+	private boolean lazyInit;
+
+	/**
+	 * 剩余预热资源数:预热期间请求方等待预热资源而不额外创建资源
+	 */
+	private final AtomicInteger WARM_UP = new AtomicInteger(0);
+
+	/**
+	 * 预热结果
+	 */
+	private CompletableFuture<Void> warmUpFuture;
+
+	public void setLazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
 	}
 
 	/**
-	 * 创建非核心资源
+	 * 默认并行数:IO密集应用2倍核心数 + 1,不超过核心资源数
+	 * @return 返回预热结果
 	 */
-	private T isNewNotCoreThread() throws Exception {
-		if (taskQueue.size() + 1 < MAX_NATURAL_RESOURCES) {
-			connection = getConnection(CONNECTION_IMPL);
-			if (connection == null) return null;
-			taskQueue.put(connection);
-			return connection;
+	public CompletableFuture<Void> warmUp() {
+		return warmUp(Math.min(CORE_NATURAL_RESOURCES,2 * CPU_CORES + 1));
+	}
+
+	/**
+	 * 预热连接池:在有界线程池中并行创建核心资源,不阻塞调用线程,重复调用返回同一预热结果
+	 * 构造连接池后立即调用即为急加载,否则首次请求链接时以默认并行数预热
+	 * @param parallelism 并行创建资源数
+	 * @return 返回预热结果,创建核心资源不足时以IllegalStateException异常完成
+	 */
+	public synchronized CompletableFuture<Void> warmUp(int parallelism) {
+		if (warmUpFuture != null) return warmUpFuture;
+		warmUpFuture = new CompletableFuture<>();
+		int count = CORE_NATURAL_RESOURCES - i.get();
+		if (count <= 0) {
+			warmUpFuture.complete(null);
+			return warmUpFuture;
+		}
+		CompletableFuture<Void> future = warmUpFuture;
+		AtomicInteger created = new AtomicInteger(0);
+		WARM_UP.set(count);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,Math.min(parallelism,count)),runnable -> {
+			Thread thread = new Thread(runnable,"预热连接池核心资源");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int j = 0; j < count; j++) {
+			executor.execute(() -> {
+				try {
+					if (newEntry(true,ConcurrentBag.STATE_NOT_IN_USE) != null) created.incrementAndGet();
+				} catch (Exception e) {
+					System.err.println("预热连接池资源异常:" + e);
+				} finally {
+					if (WARM_UP.decrementAndGet() == 0) {
+						if (created.get() == count) future.complete(null);
+						else future.completeExceptionally(new IllegalStateException("资源数不足创建对应数量核心资源"));
+					}
+				}
+			});
 		}
-		return null;
+		// 执行完已提交任务后线程自动结束
+		executor.shutdown();
+		return future;
 	}
 
 	/**
-	 * STW保证返回有效资源
+	 * 创建资源:懒加载未达核心资源数时创建核心资源,否则创建非核心资源
 	 */
-	private volatile boolean STW;
+	private ConcurrentBag.Entry<T> isNewNotCoreThread() throws Exception {
+		// 预热期间等待预热资源
+		if (WARM_UP.get() > 0) return null;
+		// 懒加载未达核心资源数时创建核心资源
+		return newEntry(i.get() < CORE_NATURAL_RESOURCES,ConcurrentBag.STATE_IN_USE);
+	}
 
 	private ExecutorService threadPool;
 
@@ -228,78 +422,313 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 	}
 
 	/**
-	 * 监控线程池核心资源状态
+	 * 资源校验对象:为空则视所有资源有效
+	 */
+	private ConnectionValidator<T> validator;
+
+	/**
+	 * 最小空闲资源数:超出核心资源数部分以非核心资源补充
 	 */
-	private void monitoringThread() throws Exception {
-		ThreadUtil.daemonThread(() -> {
-			while (true) {
-				// 检查时间
-				CodeOptimizeUtil.tryCatch(() -> timeUnit.sleep(time));
-				STW = true;
-				updateConnections(takeNotes());
-				STW = false;
+	private int minIdle;
+
+	/**
+	 * 资源最大存活时间:纳秒,0不限制
+	 */
+	private long maxLifetime;
+
+	/**
+	 * 非核心资源最大空闲时间:纳秒,默认10分钟
+	 */
+	private long idleTimeout = TimeUnit.MINUTES.toNanos(10);
+
+	/**
+	 * 每个周期校验空闲资源数
+	 */
+	private int validationBatch = 4;
+
+	/**
+	 * 轮转校验起点
+	 */
+	private int cursor;
+
+	public void setValidator(ConnectionValidator<T> validator) {
+		this.validator = validator;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(int minIdle) {
+		if (minIdle > MAX_NATURAL_RESOURCES) throw new IllegalArgumentException("最小空闲资源数超过最大资源数");
+		this.minIdle = minIdle;
+	}
+
+	/**
+	 * @param maxLifetime 资源最大存活时间,0不限制
+	 * @param timeUnit 时间单位
+	 */
+	public void setMaxLifetime(long maxLifetime,TimeUnit timeUnit) {
+		this.maxLifetime = timeUnit.toNanos(maxLifetime);
+	}
+
+	/**
+	 * @param idleTimeout 非核心资源最大空闲时间
+	 * @param timeUnit 时间单位
+	 */
+	public void setIdleTimeout(long idleTimeout,TimeUnit timeUnit) {
+		this.idleTimeout = timeUnit.toNanos(idleTimeout);
+	}
+
+	public void setValidationBatch(int validationBatch) {
+		if (validationBatch <= 0) throw new IllegalArgumentException("校验资源数需大于0");
+		this.validationBatch = validationBatch;
+	}
+
+	/**
+	 * 监控任务句柄
+	 */
+	private volatile TimingWheel.Timeout monitor;
+
+	/**
+	 * 租约检查任务句柄
+	 */
+	private volatile TimingWheel.Timeout tenancy;
+
+	/**
+	 * 定时任务已取消:维护中取消时不再重新调度
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * 监控线程池核心资源状态:由共享时间轮调度,每次维护后按当前检查时间重新调度
+	 * 校验与创建资源可能阻塞,维护交由IO执行器执行;维护异常时仍重新调度
+	 */
+	private void monitoringThread() {
+		if (cancelled) return;
+		monitor = ThreadUtil.scheduleBlocking(() -> {
+			try {
+				maintain();
+			} catch (RuntimeException e) {
+				System.err.println("维护连接池异常:" + e);
+			} finally {
+				monitoringThread();
 			}
-		},"监控连接池内核心资源是否有效,无效剔除");
+		},time,timeUnit);
+		// 调度期间被取消
+		if (cancelled) monitor.cancel();
 	}
 
 	/**
-	 * 记录当前链接队列中资源数
-	 * @return 返回记录核心资源集合
+	 * 取消监控与租约检查定时任务
 	 */
-	private List<T> takeNotes() {
-		List<T> connections = new ArrayList<>();
-		for (int i = 0; i < connectionQueue.size(); i++) {
-			connection = connectionQueue.poll();
-			connections.add(connection);
+	public void cancelScheduled() {
+		cancelled = true;
+		TimingWheel.Timeout timeout = monitor;
+		if (timeout != null) timeout.cancel();
+		timeout = tenancy;
+		if (timeout != null) timeout.cancel();
+	}
+
+	/**
+	 * 后台增量维护:借用方全程无需等待
+	 * 1、剔除超过最大存活时间的空闲资源
+	 * 2、剔除超过最大空闲时间且空闲数大于最小空闲数的非核心资源
+	 * 3、轮转预留少量空闲资源交由updateConnections()校验,仅剔除无效资源
+	 * 4、补足核心资源数与最小空闲资源数
+	 */
+	private void maintain() {
+		long now = System.nanoTime();
+		List<ConcurrentBag.Entry<T>> idles = BAG.values(ConcurrentBag.STATE_NOT_IN_USE);
+		int idle = idles.size();
+		List<ConcurrentBag.Entry<T>> entries = new ArrayList<>();
+		int size = idles.size();
+		int start = size == 0 ? 0 : Math.floorMod(cursor++,size);
+		for (int j = 0; j < size; j++) {
+			ConcurrentBag.Entry<T> entry = idles.get((start + j) % size);
+			// 预留失败说明已被借出
+			if (!BAG.reserve(entry)) continue;
+			if (isExpired(entry,now) || !entry.isCore() && idleTimeout > 0 && now - entry.getLastAccessed() > idleTimeout && idle > minIdle) {
+				evict(entry);
+				idle--;
+				continue;
+			}
+			if (entries.size() < validationBatch) {
+				entries.add(entry);
+				continue;
+			}
+			BAG.unreserve(entry);
+		}
+		validate(entries);
+		fill();
+		detectLeaks();
+		// 预留期间等待的异步请求
+		signalAsync();
+	}
+
+	/**
+	 * 校验预留资源:返回集合中不存在的资源剔除,新增资源放入连接池,无法放入时销毁
+	 * @param entries 预留资源条目
+	 */
+	private void validate(List<ConcurrentBag.Entry<T>> entries) {
+		if (entries.isEmpty()) return;
+		List<T> connections = new ArrayList<>(entries.size());
+		for (ConcurrentBag.Entry<T> entry : entries) {
+			connections.add(entry.getValue());
+		}
+		Set<T> valid = Collections.newSetFromMap(new IdentityHashMap<>());
+		long start = System.nanoTime();
+		try {
+			valid.addAll(updateConnections(connections));
+			VALIDATION.record(System.nanoTime() - start);
+		} catch (Exception e) {
+			// 校验异常本轮不剔除
+			System.err.println("校验连接池资源异常:" + e);
+			for (ConcurrentBag.Entry<T> entry : entries) {
+				BAG.unreserve(entry);
+			}
+			return;
+		}
+		for (ConcurrentBag.Entry<T> entry : entries) {
+			if (valid.remove(entry.getValue())) BAG.unreserve(entry);
+			else evict(entry);
+		}
+		for (T connection : valid) {
+			if (addEntry(connection,true)) continue;
+			// 已达最大资源数:新增资源无法放入连接池,销毁避免泄漏
+			System.err.println("连接池资源已满,销毁校验新增资源:" + connection);
+			destroy(connection);
+		}
+	}
+
+	/**
+	 * 补足核心资源数与最小空闲资源数
+	 */
+	private void fill() {
+		// 懒加载不主动补足核心资源数
+		while (!lazyInit && i.get() < CORE_NATURAL_RESOURCES || BAG.getCount(ConcurrentBag.STATE_NOT_IN_USE) < minIdle) {
 			try {
-				connectionQueue.put(connection);
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
+				if (newEntry(i.get() < CORE_NATURAL_RESOURCES,ConcurrentBag.STATE_NOT_IN_USE) == null) return;
+			} catch (Exception e) {
+				System.err.println("补充连接池资源异常:" + e);
+				return;
 			}
 		}
+	}
+
+	/**
+	 * @param entry 资源条目
+	 * @param now 当前时间:纳秒
+	 * @return 超过最大存活时间返回true
+	 */
+	private boolean isExpired(ConcurrentBag.Entry<T> entry,long now) {
+		if (maxLifetime <= 0) return false;
+		// 随机提前至多2.5%,避免同批创建资源同时到期
+		long lifetime = maxLifetime - ThreadLocalRandom.current().nextLong(maxLifetime / 40 + 1);
+		return now - entry.getCreateTime() > lifetime;
+	}
+
+	/**
+	 * 剔除资源并销毁
+	 * @param entry 资源条目
+	 */
+	private void evict(ConcurrentBag.Entry<T> entry) {
+		if (removeEntry(entry)) destroy(entry.getValue());
+	}
+
+	/**
+	 * 默认销毁方法:资源实现AutoCloseable则关闭
+	 * @param connection 被剔除链接对象
+	 */
+	public void destroy(T connection) {
+		if (!(connection instanceof AutoCloseable)) return;
+		try {
+			((AutoCloseable) connection).close();
+		} catch (Exception e) {
+			System.err.println("销毁连接池资源异常:" + e);
+		}
+	}
+
+	/**
+	 * @return 返回连接池内全部资源快照:空闲,借出与维护预留
+	 */
+	protected List<T> getConnections() {
+		List<T> connections = new ArrayList<>();
+		for (ConcurrentBag.Entry<T> entry : BAG.values()) {
+			connections.add(entry.getValue());
+		}
 		return connections;
 	}
 
 	/**
-	 * 默认采用周期性更新连接池存在所有核心资源
-	 * @param connections 记录核心资源集合
+	 * 默认校验方法:使用资源校验对象逐个校验,校验异常视为无效
+	 * 每个维护周期只传入轮转预留的至多validationBatch个空闲资源,不是连接池全部资源
+	 * 子类可重写实现批量或并发校验,返回集合中新增资源将放入连接池,已达最大资源数时销毁
+	 * @param connections 本轮待校验空闲资源集合
+	 * @return 返回有效资源集合
 	 */
 	public List<T> updateConnections(List<T> connections) {
-		int size = connections.size();
-		// 销毁核心资源
-		connections.clear();
-		for (int i = 0; i < size; i++) {
-			CodeOptimizeUtil.tryCatch(() -> {
-				// 创建新的链接放入连接池
-				T connection = getConnection(CONNECTION_IMPL);
-				if (connection != null) connectionQueue.put(connection);
-			});
+		if (validator == null) return connections;
+		List<T> valid = new ArrayList<>(connections.size());
+		for (T connection : connections) {
+			try {
+				if (validator.isValid(connection)) valid.add(connection);
+			} catch (Exception e) {
+				// 视为无效
+			}
 		}
-		return connections;
+		return valid;
 	}
 
 	/**
-	 * 请求链接
+	 * 默认请求链接超时时间:秒
+	 */
+	private static final long CONNECTION_TIMEOUT = 30;
+
+	/**
+	 * 请求队列占位对象
+	 */
+	private static final Object ASK = new Object();
+
+	/**
+	 * 等待期间重试创建资源间隔:纳秒
+	 */
+	private static final long ASK_RETRY = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * 请求链接:登记等待,归还或新建资源直接移交等待最久的请求方
+	 * 剔除、回收或创建失败释放资源名额时不会移交资源,每隔重试间隔重新尝试创建资源
+	 * @param timeout 超时时间
+	 * @param timeUnit 超时时间单位
 	 * @return 返回链接对象
 	 */
-	private T askConnection() throws InterruptedException {
-		// 请求获取链接对象
-		askQueue.put(new Object());
-		int i = 0;
-		while (askQueue.size() > 0) {
-			// 默认阻塞1秒 TODO 当前池的设计问题导致无法自定义超时时间
-			TimeUnit.SECONDS.sleep(1);
-			// 阻塞30秒后仍无法提供资源
-			if (connectionQueue.size() == 0 && i == 30) {
-				System.err.println("搞笑版:没有那么多资源啦!!!,下次别再取这么多啦,已经一滴都不剩了!");
-				// 没有这样的元素异常:定位不到这样的元素,也就是找不到这样的元素。
-				throw new NoSuchElementException("正经版:连接池超负荷,无法提供更多资源,可提供最大资源数为:" + this.i.get());
+	private ConcurrentBag.Entry<T> askConnection(long timeout,TimeUnit timeUnit) throws InterruptedException {
+		long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		WAIT_COUNT.increment();
+		// 请求获取链接对象:请求队列已满时在超时时间内等待入队
+		if (askQueue.offer(ASK,timeout,timeUnit)) {
+			try {
+				long nanos;
+				while ((nanos = deadline - System.nanoTime()) > 0) {
+					ConcurrentBag.Entry<T> entry = BAG.borrow(Math.min(nanos,ASK_RETRY),TimeUnit.NANOSECONDS);
+					if (entry != null) return entry;
+					// 资源名额空出时自行创建资源
+					try {
+						entry = isNewNotCoreThread();
+					} catch (Exception e) {
+						System.err.println("创建连接池资源异常:" + e);
+					}
+					if (entry != null) return entry;
+				}
+			} finally {
+				askQueue.poll();
 			}
-			// 判断是否有核心链接资源
-			if (connectionQueue.size() > 0) askQueue.poll();
-			i++;
 		}
-		return connectionQueue.poll();
+		// 超时后仍无法提供资源
+		TIMEOUT_COUNT.increment();
+		System.err.println("搞笑版:没有那么多资源啦!!!,下次别再取这么多啦,已经一滴都不剩了!");
+		// 没有这样的元素异常:定位不到这样的元素,也就是找不到这样的元素。
+		throw new NoSuchElementException("正经版:连接池超负荷,无法提供更多资源,可提供最大资源数为:" + this.i.get());
 	}
 
 	/**
@@ -308,75 +737,281 @@ public abstract class CustomConnectPool<T> implements ConnectPool<T> {
 	private volatile boolean init = true;
 
 	/**
+	 * 默认最多等待30秒
 	 * @return 返回一个链接
 	 * @throws InterruptedException
 	 */
-	public synchronized T getConnection() throws Exception {
-		if (init) {
-			init();
-			init = false;
-		}
-		// STW时间
-		while (STW) {Thread.onSpinWait();}
+	public T getConnection() throws Exception {
+		return getConnection(CONNECTION_TIMEOUT,TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 借出归还不加锁:优先从资源包借出空闲资源,其次创建非核心资源,最后请求等待
+	 * @param timeout 无可用资源时等待时间
+	 * @param timeUnit 等待时间单位
+	 * @return 返回一个链接
+	 * @throws NoSuchElementException 超时仍无可用资源
+	 */
+	public T getConnection(long timeout,TimeUnit timeUnit) throws Exception {
+		if (init) init();
+		long start = System.nanoTime();
 		// 核心资源
-		connection = connectionQueue.poll();
-		if (connection != null) {
-			taskQueue.put(connection);
-			return connection;
-		}
+		ConcurrentBag.Entry<T> entry = BAG.borrow();
 		// 非核心资源
-		connection = isNewNotCoreThread();
-		if (connection != null) return connection;
+		if (entry == null) entry = isNewNotCoreThread();
 		// 请求资源
-		return askConnection();
+		if (entry == null) entry = askConnection(timeout,timeUnit);
+		entry.setLease(new Lease<>(entry.getValue(),captureStackTrace));
+		ACQUIRE.record(System.nanoTime() - start);
+		return entry.getValue();
+	}
+
+	/**
+	 * 异步请求队列:按请求顺序完成
+	 */
+	private final ConcurrentLinkedQueue<AsyncAsk> ASYNC_WAITERS = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 异步请求
+	 */
+	private class AsyncAsk {
+
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private final long start = System.nanoTime();
+	}
+
+	/**
+	 * 默认最多等待30秒
+	 * @return 返回异步链接对象
+	 */
+	public CompletableFuture<T> getConnectionAsync() {
+		return getConnectionAsync(CONNECTION_TIMEOUT,TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 异步请求链接:不阻塞调用线程,资源可用时完成
+	 * 有空闲资源立即完成;否则登记异步请求,非核心资源在线程池中创建,归还资源时按请求顺序完成
+	 * 完成回调在归还资源线程中执行,耗时回调请使用xxxAsync方法
+	 * @param timeout 无可用资源时等待时间
+	 * @param timeUnit 等待时间单位
+	 * @return 返回异步链接对象,超时以TimeoutException异常完成
+	 */
+	public CompletableFuture<T> getConnectionAsync(long timeout,TimeUnit timeUnit) {
+		if (init) {
+			try {
+				init();
+			} catch (Exception e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+		AsyncAsk ask = new AsyncAsk();
+		ConcurrentBag.Entry<T> entry = BAG.borrow();
+		if (entry != null) {
+			complete(ask,entry);
+			return ask.future;
+		}
+		WAIT_COUNT.increment();
+		ASYNC_WAITERS.offer(ask);
+		ask.future.orTimeout(timeout,timeUnit).whenComplete((connection,e) -> {
+			if (!(e instanceof TimeoutException)) return;
+			TIMEOUT_COUNT.increment();
+			ASYNC_WAITERS.remove(ask);
+		});
+		// 登记后重新检查,避免错过登记前归还的资源
+		signalAsync();
+		if (!ask.future.isDone()) newEntryAsync();
+		return ask.future;
 	}
 
 	/**
-	 * 设置获取核心资源链接对象租期
+	 * 在线程池中创建非核心资源,创建后交由异步请求
+	 */
+	private void newEntryAsync() {
+		if (i.get() >= MAX_NATURAL_RESOURCES || WARM_UP.get() > 0) return;
+		Executor executor = threadPool == null || threadPool.isShutdown() ? ForkJoinPool.commonPool() : threadPool;
+		try {
+			executor.execute(() -> {
+				try {
+					newEntry(i.get() < CORE_NATURAL_RESOURCES,ConcurrentBag.STATE_NOT_IN_USE);
+				} catch (Exception e) {
+					System.err.println("创建连接池资源异常:" + e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// 等待归还资源
+		}
+	}
+
+	/**
+	 * 存在异步请求时借出空闲资源完成请求
+	 */
+	private void signalAsync() {
+		AsyncAsk ask;
+		while ((ask = ASYNC_WAITERS.peek()) != null) {
+			ConcurrentBag.Entry<T> entry = BAG.borrow();
+			if (entry == null) return;
+			// 并发完成时请求可能已被取出
+			if (!ASYNC_WAITERS.remove(ask) || !complete(ask,entry)) BAG.requite(entry.getValue());
+		}
+	}
+
+	/**
+	 * @param ask 异步请求
+	 * @param entry 已借出资源条目
+	 * @return 请求已超时或取消返回false
+	 */
+	private boolean complete(AsyncAsk ask,ConcurrentBag.Entry<T> entry) {
+		entry.setLease(new Lease<>(entry.getValue(),captureStackTrace));
+		if (!ask.future.complete(entry.getValue())) {
+			entry.setLease(null);
+			return false;
+		}
+		ACQUIRE.record(System.nanoTime() - ask.start);
+		return true;
+	}
+
+	/**
+	 * 泄漏检测阈值:纳秒,0不检测
+	 */
+	private long leakDetectionThreshold;
+
+	/**
+	 * 是否记录借出调用栈
+	 */
+	private boolean captureStackTrace;
+
+	/**
+	 * 资源持有超过阈值时在后台维护中报告疑似泄漏,报告间隔为维护周期
+	 * @param leakDetectionThreshold 泄漏检测阈值,0不检测
+	 * @param timeUnit 时间单位
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold,TimeUnit timeUnit) {
+		this.leakDetectionThreshold = timeUnit.toNanos(leakDetectionThreshold);
+	}
+
+	/**
+	 * 开启后每次借出记录调用栈,泄漏报告中输出借出位置
+	 * @param captureStackTrace 是否记录借出调用栈
+	 */
+	public void setCaptureStackTrace(boolean captureStackTrace) {
+		this.captureStackTrace = captureStackTrace;
+	}
+
+	/**
+	 * @return 返回当前所有租约,按借出时间升序
+	 */
+	public List<Lease<T>> getLeases() {
+		List<Lease<T>> leases = new ArrayList<>();
+		for (ConcurrentBag.Entry<T> entry : BAG.values(ConcurrentBag.STATE_IN_USE)) {
+			Lease<T> lease = entry.getLease();
+			if (lease != null) leases.add(lease);
+		}
+		leases.sort(Comparator.comparingLong(Lease::getBorrowTime));
+		return leases;
+	}
+
+	/**
+	 * 报告持有时长超过泄漏检测阈值的租约
+	 */
+	private void detectLeaks() {
+		if (leakDetectionThreshold <= 0) return;
+		long now = System.nanoTime();
+		for (ConcurrentBag.Entry<T> entry : BAG.values(ConcurrentBag.STATE_IN_USE)) {
+			Lease<T> lease = entry.getLease();
+			if (lease != null && now - lease.getBorrowTime() > leakDetectionThreshold) lease.reportLeak(TimeUnit.NANOSECONDS.toMillis(leakDetectionThreshold));
+		}
+	}
+
+	/**
+	 * 设置获取链接对象租期:租约到期的资源脱离连接池并获取新资源替代,未到期资源不受影响
+	 * 脱离的资源不会被关闭,借用方归还时销毁
+	 * 检查间隔为租期的四分之一
 	 * @param time 租期时间
 	 * @param timeUnit 租期时间单位
 	 */
-	public void setConnectionTenancy(long time,TimeUnit timeUnit) throws Exception {
-		ThreadUtil.daemonThread(() -> {
-			while (true) {
-				CodeOptimizeUtil.tryCatch(() -> timeUnit.sleep(time));
-				connection = taskQueue.poll();
-				if (connection == null) continue;
-				// 强制回收旧资源获取新资源替代
-				connection = retrieve(connection);
-				if (connection == null) continue;
-				connectionQueue.put(connection);
+	public synchronized void setConnectionTenancy(long time,TimeUnit timeUnit) {
+		long nanos = timeUnit.toNanos(time);
+		long interval = Math.max(nanos / 4,TimeUnit.MILLISECONDS.toNanos(1));
+		// 重复设置时替换原租约检查任务
+		if (tenancy != null) tenancy.cancel();
+		// 回收时获取新资源可能阻塞,交由IO执行器执行
+		tenancy = ThreadUtil.scheduleBlockingWithFixedDelay(() -> reclaim(nanos),interval,interval,TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 回收租约到期资源
+	 * @param tenancy 租期:纳秒
+	 */
+	private void reclaim(long tenancy) {
+		long now = System.nanoTime();
+		for (ConcurrentBag.Entry<T> entry : BAG.values(ConcurrentBag.STATE_IN_USE)) {
+			Lease<T> lease = entry.getLease();
+			if (lease == null || now - lease.getBorrowTime() <= tenancy) continue;
+			// 已被归还或移除
+			if (!removeEntry(entry)) continue;
+			T connection = entry.getValue();
+			// 借用方仍在使用,不关闭:脱离连接池并报告,归还时再销毁
+			DETACHED.add(connection);
+			System.err.println("租约到期资源已脱离连接池,归还时销毁:" + lease);
+			T replacement = null;
+			try {
+				// 获取新资源替代
+				replacement = retrieve(connection);
+			} catch (Exception e) {
+				System.err.println("回收连接池资源异常:" + e);
 			}
-		},"获取链接对象租期");
+			// 已达最大资源数时关闭替代资源
+			if (replacement != null && !addEntry(replacement,entry.isCore())) destroy(replacement);
+		}
 	}
 
+	/**
+	 * 租约到期后脱离连接池、仍被借用方持有的资源:归还时销毁
+	 */
+	private final Set<T> DETACHED = ConcurrentHashMap.newKeySet();
+
 	/**
 	 * 默认回收方法:重置获取新链接
+	 * 旧资源已移出资源包且不会被关闭,借用方归还时由destroy()销毁
 	 * @param connection 需回收链接对象
 	 * @return 返回回收链接对象
 	 * @throws Exception
 	 */
 	public T retrieve(T connection) throws Exception {
-		connection = null;
-		// -1;
-		i.decrementAndGet();
-		return getConnection(CONNECTION_IMPL);
+		return CONNECTION_IMPL.getConnection();
 	}
 
 	/**
+	 * 超过最大存活时间资源归还时直接剔除,存在请求方则立即补充
 	 * @param connection 归还链接
 	 */
-	public synchronized void setConnection(T connection) {
-		taskQueue.poll();
-		// 判断所有核心资源数全部归还完毕
-		if (connectionQueue.size() == CORE_NATURAL_RESOURCES) {
-			connection = null;
+	public void setConnection(T connection) {
+		if (connection == null) return;
+		// 租约到期已脱离连接池的资源
+		if (DETACHED.remove(connection)) {
+			destroy(connection);
 			return;
 		}
-		try {
-			connectionQueue.put(connection);
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
+		ConcurrentBag.Entry<T> entry = BAG.getEntry(connection);
+		if (entry != null && entry.getState() == ConcurrentBag.STATE_IN_USE) {
+			Lease<T> lease = entry.getLease();
+			if (lease != null) {
+				USAGE.record(System.nanoTime() - lease.getBorrowTime());
+				if (lease.isLeaked()) System.err.println("疑似泄漏资源已归还:" + lease);
+			}
+			entry.setLease(null);
+		}
+		if (entry != null && isExpired(entry,System.nanoTime()) && removeEntry(entry)) {
+			destroy(connection);
+			if (BAG.getWaiters() == 0 && ASYNC_WAITERS.isEmpty()) return;
+			try {
+				newEntry(entry.isCore(),ConcurrentBag.STATE_NOT_IN_USE);
+			} catch (Exception e) {
+				System.err.println("补充连接池资源异常:" + e);
+			}
+			return;
 		}
+		if (BAG.requite(connection)) signalAsync();
 	}
-}
\ No newline at end of file
+}
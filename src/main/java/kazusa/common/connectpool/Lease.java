@@ -0,0 +1,103 @@
+package kazusa.common.connectpool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 资源租约:记录借出方、借出时间与可选借出调用栈
+ * @author kazusa
+ * @version 1.0.0
+ * @param <T> 资源类型
+ * @see CustomConnectPool#getLeases()
+ */
+public class Lease<T> {
+
+	private final T connection;
+
+	/**
+	 * 借出线程名
+	 */
+	private final String threadName;
+
+	/**
+	 * 借出时间:纳秒,用于计算持有时长
+	 */
+	private final long borrowTime = System.nanoTime();
+
+	/**
+	 * 借出时间:毫秒时间戳,用于报告
+	 */
+	private final long borrowTimeMillis = System.currentTimeMillis();
+
+	/**
+	 * 借出调用栈:未开启记录为null
+	 */
+	private final Throwable stackTrace;
+
+	/**
+	 * 是否已报告疑似泄漏
+	 */
+	private volatile boolean leaked;
+
+	Lease(T connection, boolean captureStackTrace) {
+		this.connection = connection;
+		this.threadName = Thread.currentThread().getName();
+		this.stackTrace = captureStackTrace ? new Throwable("资源借出位置") : null;
+	}
+
+	public T getConnection() {
+		return connection;
+	}
+
+	public String getThreadName() {
+		return threadName;
+	}
+
+	public long getBorrowTime() {
+		return borrowTime;
+	}
+
+	public long getBorrowTimeMillis() {
+		return borrowTimeMillis;
+	}
+
+	/**
+	 * @return 借出调用栈,未开启记录返回null
+	 */
+	public StackTraceElement[] getStackTrace() {
+		return stackTrace == null ? null : stackTrace.getStackTrace();
+	}
+
+	/**
+	 * @param timeUnit 时间单位
+	 * @return 返回已持有时长
+	 */
+	public long getHeldTime(TimeUnit timeUnit) {
+		return timeUnit.convert(System.nanoTime() - borrowTime,TimeUnit.NANOSECONDS);
+	}
+
+	public boolean isLeaked() {
+		return leaked;
+	}
+
+	/**
+	 * 报告疑似泄漏,每个租约只报告一次
+	 * @param threshold 泄漏检测阈值:毫秒
+	 */
+	void reportLeak(long threshold) {
+		if (leaked) return;
+		leaked = true;
+		System.err.println("疑似资源泄漏:线程" + threadName + "持有资源" + connection + "已超过" + threshold + "毫秒");
+		if (stackTrace != null) stackTrace.printStackTrace();
+	}
+
+	@Override
+	public String toString() {
+		return "Lease{" +
+				"connection=" + connection +
+				", threadName='" + threadName + '\'' +
+				", borrowTimeMillis=" + borrowTimeMillis +
+				", heldMillis=" + getHeldTime(TimeUnit.MILLISECONDS) +
+				", leaked=" + leaked +
+				'}';
+	}
+}
@@ -0,0 +1,143 @@
+package kazusa.common.connectpool;
+
+import kazusa.common.metrics.Histogram;
+
+/**
+ * 连接池指标快照,耗时单位均为纳秒
+ * @author kazusa
+ * @version 1.0.0
+ * @see CustomConnectPool#getPoolMetrics()
+ */
+public class PoolMetrics {
+
+	/**
+	 * 借出资源数
+	 */
+	private final int active;
+
+	/**
+	 * 空闲资源数
+	 */
+	private final int idle;
+
+	/**
+	 * 等待资源请求数
+	 */
+	private final int pending;
+
+	/**
+	 * 已创建资源数
+	 */
+	private final int total;
+
+	/**
+	 * 最大资源数
+	 */
+	private final int max;
+
+	/**
+	 * 进入等待的请求数
+	 */
+	private final long waitCount;
+
+	/**
+	 * 等待超时的请求数
+	 */
+	private final long timeoutCount;
+
+	/**
+	 * 获取资源耗时
+	 */
+	private final Histogram.Snapshot acquire;
+
+	/**
+	 * 资源借出至归还时长
+	 */
+	private final Histogram.Snapshot usage;
+
+	/**
+	 * 创建资源耗时
+	 */
+	private final Histogram.Snapshot creation;
+
+	/**
+	 * 校验资源耗时
+	 */
+	private final Histogram.Snapshot validation;
+
+	PoolMetrics(int active, int idle, int pending, int total, int max, long waitCount, long timeoutCount,
+				Histogram.Snapshot acquire, Histogram.Snapshot usage, Histogram.Snapshot creation, Histogram.Snapshot validation) {
+		this.active = active;
+		this.idle = idle;
+		this.pending = pending;
+		this.total = total;
+		this.max = max;
+		this.waitCount = waitCount;
+		this.timeoutCount = timeoutCount;
+		this.acquire = acquire;
+		this.usage = usage;
+		this.creation = creation;
+		this.validation = validation;
+	}
+
+	public int getActive() {
+		return active;
+	}
+
+	public int getIdle() {
+		return idle;
+	}
+
+	public int getPending() {
+		return pending;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public long getWaitCount() {
+		return waitCount;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public Histogram.Snapshot getAcquire() {
+		return acquire;
+	}
+
+	public Histogram.Snapshot getUsage() {
+		return usage;
+	}
+
+	public Histogram.Snapshot getCreation() {
+		return creation;
+	}
+
+	public Histogram.Snapshot getValidation() {
+		return validation;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolMetrics{" +
+				"active=" + active +
+				", idle=" + idle +
+				", pending=" + pending +
+				", total=" + total +
+				", max=" + max +
+				", waitCount=" + waitCount +
+				", timeoutCount=" + timeoutCount +
+				", acquire=[" + acquire +
+				"], usage=[" + usage +
+				"], creation=[" + creation +
+				"], validation=[" + validation +
+				"]}";
+	}
+}
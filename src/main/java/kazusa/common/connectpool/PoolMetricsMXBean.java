@@ -0,0 +1,40 @@
+package kazusa.common.connectpool;
+
+/**
+ * 连接池JMX监控接口,耗时单位均为纳秒
+ * @author kazusa
+ * @version 1.0.0
+ * @see CustomConnectPool#registerMBean(String)
+ */
+public interface PoolMetricsMXBean {
+
+	int getActive();
+
+	int getIdle();
+
+	int getPending();
+
+	int getTotal();
+
+	int getMax();
+
+	long getWaitCount();
+
+	long getTimeoutCount();
+
+	long getAcquireCount();
+
+	long getAcquireMean();
+
+	long getAcquireP99();
+
+	long getAcquireMax();
+
+	long getUsageMean();
+
+	long getUsageP99();
+
+	long getCreationMean();
+
+	long getValidationMean();
+}
@@ -0,0 +1,188 @@
+package kazusa.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁对数线性直方图:参考HdrHistogram分桶方式
+ * 按2的幂分段,每段再线性划分16个子桶,相对误差不超过1/16,记录值通常为纳秒
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class Histogram {
+
+	/**
+	 * 每段子桶数:2^4
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * 桶数:小于16的值各占一桶,其余按最高位分段
+	 */
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray COUNTS = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder COUNT = new LongAdder();
+
+	private final LongAdder SUM = new LongAdder();
+
+	private final AtomicLong MAX = new AtomicLong();
+
+	/**
+	 * 记录值,负数按0记录
+	 * @param value 记录值
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		COUNTS.incrementAndGet(index(value));
+		COUNT.increment();
+		SUM.add(value);
+		long max;
+		while (value > (max = MAX.get()) && !MAX.compareAndSet(max,value)) {
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * @param value 记录值
+	 * @return 返回记录值所在桶下标
+	 */
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @param index 桶下标
+	 * @return 返回桶内最大值
+	 */
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+	}
+
+	/**
+	 * 清空记录值,与并发记录之间不保证原子性
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			COUNTS.set(i,0);
+		}
+		COUNT.reset();
+		SUM.reset();
+		MAX.set(0);
+	}
+
+	/**
+	 * @return 返回当前记录值快照
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = COUNTS.get(i);
+			total += counts[i];
+		}
+		long max = MAX.get();
+		long sum = SUM.sum();
+		return new Snapshot(
+			total,
+			total == 0 ? 0 : sum / total,
+			max,
+			percentile(counts,total,max,0.50),
+			percentile(counts,total,max,0.90),
+			percentile(counts,total,max,0.99),
+			percentile(counts,total,max,0.999)
+		);
+	}
+
+	/**
+	 * @param counts 各桶记录数
+	 * @param total 记录总数
+	 * @param max 最大值
+	 * @param percentile 百分位
+	 * @return 返回百分位对应值
+	 */
+	private static long percentile(long[] counts,long total,long max,double percentile) {
+		if (total == 0) return 0;
+		long rank = Math.max(1,(long) Math.ceil(total * percentile));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return Math.min(highestValue(i),max);
+		}
+		return max;
+	}
+
+	/**
+	 * 直方图快照
+	 */
+	public static class Snapshot {
+
+		private final long count;
+
+		private final long mean;
+
+		private final long max;
+
+		private final long p50;
+
+		private final long p90;
+
+		private final long p99;
+
+		private final long p999;
+
+		private Snapshot(long count, long mean, long max, long p50, long p90, long p99, long p999) {
+			this.count = count;
+			this.mean = mean;
+			this.max = max;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.p999 = p999;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMean() {
+			return mean;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP90() {
+			return p90;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getP999() {
+			return p999;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ",mean=" + mean + ",p50=" + p50 + ",p90=" + p90 + ",p99=" + p99 + ",p999=" + p999 + ",max=" + max;
+		}
+	}
+}
@@ -10,7 +10,6 @@ import java.io.*;
 import java.util.List;
 
 import static kazusa.io.IOUtil.getReaderInputStream;
-import static kazusa.io.IOUtil.string;
 
 /**
  * 外部调用
@@ -104,6 +103,7 @@ public class ExternalCallUtil {
 			bufferedReader = getReaderInputStream(((File) script).getCanonicalPath());
 			CodeOptimizeUtil.tryCatchFinallyClose(() -> {
 				// 读取脚本文件中调用函数
+				String string;
 				while ((string = bufferedReader.readLine()) != null) {
 					stringBuilder.append(string);
 				}
@@ -202,8 +202,6 @@ public class IOUtil {
 
 	public static int read;
 
-	public static String string;
-
 	public static byte[] bytes = new byte[8];
 
 	/**
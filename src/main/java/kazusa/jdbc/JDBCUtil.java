@@ -85,9 +85,10 @@ public class JDBCUtil {
 	 */
 	public JDBCPool getJDBCPool() {
 		JDBCPool jdbcPool = new JDBCPool(this::getConnection);
-		// mysql默认8小时自动断开链接,设置为7小时提前释放获取新链接更新
-		jdbcPool.setTime(7);
-		jdbcPool.setTimeUnit(TimeUnit.HOURS);
+		// mysql默认8小时自动断开链接,设置最大存活7小时,到期链接由后台逐个替换
+		jdbcPool.setMaxLifetime(7,TimeUnit.HOURS);
+		// 每个维护周期校验少量空闲链接
+		jdbcPool.setValidator(connection -> connection.isValid(5));
 		return jdbcPool;
 	}
 
@@ -0,0 +1,219 @@
+package kazusa.thread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * 分治并行任务:按下标区间递归拆分,配合Fork/Join框架执行
+ * 区间大于拆分阈值且当前线程积压任务不多时继续拆分,否则顺序执行,避免过度拆分
+ * 任一区间异常时其余区间尽快停止,全部结束后抛出首个异常,其余异常附加为suppressed
+ * 取消根任务时所有区间尽快停止
+ * @author kazusa
+ * @version 1.0.0
+ * @param <R> 结果类型
+ * @see ThreadUtil#parallelMap(List, Function)
+ */
+class ParallelTask<R> extends RecursiveTask<R> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 当前线程积压任务数上限:超过时不再拆分,由空闲线程窃取已有任务
+	 */
+	private static final int SURPLUS = 3;
+
+	/**
+	 * 区间顺序执行方式
+	 * @param <R> 结果类型
+	 */
+	interface Leaf<R> {
+		R compute(int from, int to, Context context);
+	}
+
+	/**
+	 * 一次并行操作的共享状态
+	 */
+	static final class Context {
+
+		private volatile boolean cancelled;
+
+		private final ConcurrentLinkedQueue<Throwable> ERRORS = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * @return 已取消或已有区间异常返回true
+		 */
+		boolean isCancelled() {
+			return cancelled;
+		}
+
+		private void fail(Throwable throwable) {
+			ERRORS.add(throwable);
+			cancelled = true;
+		}
+
+		/**
+		 * 抛出首个异常,其余异常附加为suppressed
+		 */
+		private void throwIfFailed() {
+			Throwable first = ERRORS.poll();
+			if (first == null) return;
+			for (Throwable throwable : ERRORS) {
+				if (throwable != first) first.addSuppressed(throwable);
+			}
+			if (first instanceof Error) throw (Error) first;
+			if (first instanceof RuntimeException) throw (RuntimeException) first;
+			throw new RuntimeException(first);
+		}
+	}
+
+	private final Context CONTEXT;
+
+	private final int FROM;
+
+	private final int TO;
+
+	private final int THRESHOLD;
+
+	private final Leaf<R> LEAF;
+
+	/**
+	 * 合并左右区间结果
+	 */
+	private final BinaryOperator<R> COMBINER;
+
+	/**
+	 * 是否为根任务:根任务在全部区间结束后抛出异常
+	 */
+	private final boolean ROOT;
+
+	private ParallelTask(Context context, int from, int to, int threshold, Leaf<R> leaf, BinaryOperator<R> combiner, boolean root) {
+		CONTEXT = context;
+		FROM = from;
+		TO = to;
+		THRESHOLD = threshold;
+		LEAF = leaf;
+		COMBINER = combiner;
+		ROOT = root;
+	}
+
+	/**
+	 * @param size 元素数
+	 * @param pool 执行线程池
+	 * @param leaf 区间顺序执行方式
+	 * @param combiner 合并左右区间结果
+	 * @return 返回根任务
+	 */
+	static <R> ParallelTask<R> of(int size, ForkJoinPool pool, Leaf<R> leaf, BinaryOperator<R> combiner) {
+		// 与并行流相同:每个线程约分得4个区间
+		int threshold = Math.max(1,size / (pool.getParallelism() << 2));
+		return new ParallelTask<>(new Context(),0,size,threshold,leaf,combiner,true);
+	}
+
+	@Override
+	protected R compute() {
+		R result = split();
+		if (ROOT) CONTEXT.throwIfFailed();
+		return result;
+	}
+
+	private R split() {
+		if (CONTEXT.isCancelled()) return null;
+		if (TO - FROM > THRESHOLD && getSurplusQueuedTaskCount() <= SURPLUS) {
+			int mid = (FROM + TO) >>> 1;
+			ParallelTask<R> left = new ParallelTask<>(CONTEXT,FROM,mid,THRESHOLD,LEAF,COMBINER,false);
+			left.fork();
+			R right = new ParallelTask<>(CONTEXT,mid,TO,THRESHOLD,LEAF,COMBINER,false).split();
+			return COMBINER.apply(left.join(),right);
+		}
+		try {
+			return LEAF.compute(FROM,TO,CONTEXT);
+		} catch (Throwable throwable) {
+			CONTEXT.fail(throwable);
+			return null;
+		}
+	}
+
+	/**
+	 * 取消时通知所有区间停止
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		CONTEXT.cancelled = true;
+		return super.cancel(mayInterruptIfRunning);
+	}
+
+	/**
+	 * 并行映射
+	 * @param get 按下标取元素
+	 * @param size 元素数
+	 * @param mapper 映射方法
+	 * @param pool 执行线程池
+	 * @return 返回按原顺序排列的映射结果
+	 */
+	static <T,R> ParallelTask<List<R>> map(IntFunction<T> get, int size, Function<? super T,? extends R> mapper, ForkJoinPool pool) {
+		@SuppressWarnings("unchecked")
+		List<R> results = (List<R>) Arrays.asList(new Object[size]);
+		return of(size,pool,(from,to,context) -> {
+			for (int i = from; i < to && !context.isCancelled(); i++) {
+				results.set(i,mapper.apply(get.apply(i)));
+			}
+			return results;
+		},(left,right) -> left != null ? left : right);
+	}
+
+	/**
+	 * 并行归约
+	 * @param get 按下标取元素
+	 * @param size 元素数
+	 * @param identity 初始值,需满足 operator(identity,x) = x
+	 * @param operator 满足结合律的归约方法
+	 * @param pool 执行线程池
+	 * @return 返回归约结果
+	 */
+	static <T> ParallelTask<T> reduce(IntFunction<T> get, int size, T identity, BinaryOperator<T> operator, ForkJoinPool pool) {
+		return of(size,pool,(from,to,context) -> {
+			T result = identity;
+			for (int i = from; i < to && !context.isCancelled(); i++) {
+				result = operator.apply(result,get.apply(i));
+			}
+			return result;
+		},(left,right) -> left == null ? right : right == null ? left : operator.apply(left,right));
+	}
+
+	/**
+	 * 并行遍历
+	 * @param get 按下标取元素
+	 * @param size 元素数
+	 * @param action 遍历操作
+	 * @param pool 执行线程池
+	 * @return 返回遍历任务
+	 */
+	static <T> ParallelTask<Void> forEach(IntFunction<T> get, int size, Consumer<? super T> action, ForkJoinPool pool) {
+		return of(size,pool,(from,to,context) -> {
+			for (int i = from; i < to && !context.isCancelled(); i++) {
+				action.accept(get.apply(i));
+			}
+			return null;
+		},(left,right) -> null);
+	}
+
+	/**
+	 * 非随机访问集合先复制为数组,避免按下标取元素退化为遍历
+	 * @param list 集合
+	 * @return 返回按下标取元素方法
+	 */
+	static <T> IntFunction<T> getter(List<T> list) {
+		if (list instanceof RandomAccess) return list::get;
+		List<T> copy = new ArrayList<>(list);
+		return copy::get;
+	}
+}
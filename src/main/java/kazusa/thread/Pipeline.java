@@ -0,0 +1,353 @@
+package kazusa.thread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 异步流水线:每个阶段绑定一个命名执行器,如计算阶段使用CPU执行器,阻塞IO阶段使用IO执行器,避免IO阻塞公共Fork/Join线程池
+ * 阶段超时从上一阶段完成时开始计时,超时或取消时中断执行中的阶段
+ * @author kazusa
+ * @version 1.0.0
+ * @param <T> 当前阶段结果类型
+ * @see ThreadUtil#pipeline(String, Supplier)
+ */
+public class Pipeline<T> {
+
+	private final CompletableFuture<T> FUTURE;
+
+	/**
+	 * 执行中的阶段:取消流水线时一并取消
+	 */
+	private final AtomicReference<CompletableFuture<?>> CURRENT;
+
+	private Pipeline(CompletableFuture<T> future, AtomicReference<CompletableFuture<?>> current) {
+		FUTURE = future;
+		CURRENT = current;
+	}
+
+	/**
+	 * @param executor 执行器名
+	 * @param supplier 首个阶段
+	 * @param timeout 阶段超时时间,0不限制
+	 * @param timeUnit 超时时间单位
+	 * @return 返回流水线
+	 */
+	static <T> Pipeline<T> start(String executor, Supplier<T> supplier, long timeout, TimeUnit timeUnit) {
+		AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+		return new Pipeline<>(stage(current,executor,supplier::get,timeUnit.toNanos(timeout)),current);
+	}
+
+	/**
+	 * 在命名执行器中执行一个阶段
+	 * @param current 执行中的阶段记录
+	 * @param executor 执行器名
+	 * @param callable 阶段任务
+	 * @param timeout 阶段超时时间:纳秒,0不限制
+	 * @return 返回阶段结果
+	 */
+	private static <R> CompletableFuture<R> stage(AtomicReference<CompletableFuture<?>> current, String executor, Callable<R> callable, long timeout) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		current.set(future);
+		Future<?> task;
+		try {
+			task = ThreadUtil.getExecutor(executor).submit(() -> {
+				if (future.isDone()) return;
+				try {
+					future.complete(callable.call());
+				} catch (Throwable throwable) {
+					future.completeExceptionally(throwable);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		if (timeout > 0) future.orTimeout(timeout,TimeUnit.NANOSECONDS);
+		// 超时或被取消时中断执行中的阶段
+		future.whenComplete((result,throwable) -> {
+			if (throwable != null) task.cancel(true);
+		});
+		return future;
+	}
+
+	/**
+	 * 在命名执行器中转换结果
+	 * @param executor 执行器名
+	 * @param function 转换方法
+	 * @return 返回下一阶段
+	 */
+	public <R> Pipeline<R> thenApply(String executor, Function<? super T,? extends R> function) {
+		return thenApply(executor,function,0,TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 在命名执行器中限时转换结果
+	 * @param executor 执行器名
+	 * @param function 转换方法
+	 * @param timeout 阶段超时时间,超时以TimeoutException结束
+	 * @param timeUnit 超时时间单位
+	 * @return 返回下一阶段
+	 */
+	public <R> Pipeline<R> thenApply(String executor, Function<? super T,? extends R> function, long timeout, TimeUnit timeUnit) {
+		long nanos = timeUnit.toNanos(timeout);
+		return next(FUTURE.thenCompose(value -> stage(CURRENT,executor,() -> function.apply(value),nanos)));
+	}
+
+	/**
+	 * 在命名执行器中消费结果
+	 * @param executor 执行器名
+	 * @param consumer 消费方法
+	 * @return 返回下一阶段
+	 */
+	public Pipeline<Void> thenAccept(String executor, Consumer<? super T> consumer) {
+		return thenAccept(executor,consumer,0,TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 在命名执行器中限时消费结果
+	 * @param executor 执行器名
+	 * @param consumer 消费方法
+	 * @param timeout 阶段超时时间,超时以TimeoutException结束
+	 * @param timeUnit 超时时间单位
+	 * @return 返回下一阶段
+	 */
+	public Pipeline<Void> thenAccept(String executor, Consumer<? super T> consumer, long timeout, TimeUnit timeUnit) {
+		return thenApply(executor,value -> {
+			consumer.accept(value);
+			return null;
+		},timeout,timeUnit);
+	}
+
+	/**
+	 * 衔接异步阶段:如异步http请求,不占用执行器线程
+	 * @param function 返回异步结果的方法
+	 * @param timeout 阶段超时时间,0不限制
+	 * @param timeUnit 超时时间单位
+	 * @return 返回下一阶段
+	 */
+	public <R> Pipeline<R> thenCompose(Function<? super T,? extends CompletionStage<R>> function, long timeout, TimeUnit timeUnit) {
+		long nanos = timeUnit.toNanos(timeout);
+		return next(FUTURE.thenCompose(value -> {
+			CompletableFuture<R> future = function.apply(value).toCompletableFuture();
+			CURRENT.set(future);
+			return nanos > 0 ? future.orTimeout(nanos,TimeUnit.NANOSECONDS) : future;
+		}));
+	}
+
+	/**
+	 * 任一阶段异常时转换为结果
+	 * @param function 异常处理方法,参数为原始异常
+	 * @return 返回下一阶段
+	 */
+	public Pipeline<T> exceptionally(Function<Throwable,? extends T> function) {
+		return next(FUTURE.exceptionally(throwable -> function.apply(unwrap(throwable))));
+	}
+
+	private <R> Pipeline<R> next(CompletableFuture<R> future) {
+		return new Pipeline<>(future,CURRENT);
+	}
+
+	/**
+	 * 取消流水线:中断执行中的阶段,后续阶段不再执行
+	 * @return 取消成功返回true
+	 */
+	public boolean cancel() {
+		CompletableFuture<?> current = CURRENT.get();
+		if (current != null) current.cancel(true);
+		return FUTURE.cancel(true);
+	}
+
+	/**
+	 * @return 返回阻塞等待结果,异常时抛出原始异常
+	 */
+	public T join() {
+		try {
+			return FUTURE.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * @return 返回流水线最终结果
+	 */
+	public CompletableFuture<T> toCompletableFuture() {
+		return FUTURE;
+	}
+
+	/**
+	 * @param throwable 异常
+	 * @return 返回去除CompletionException与ExecutionException包装的原始异常
+	 */
+	static Throwable unwrap(Throwable throwable) {
+		while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		return throwable;
+	}
+
+	/**
+	 * 全部完成:任一异常立即以该异常结束并取消其余未完成任务
+	 * @param futures 异步结果集合
+	 * @return 返回按原顺序排列的结果集合
+	 */
+	static <T> CompletableFuture<List<T>> allOf(List<? extends CompletableFuture<? extends T>> futures) {
+		CompletableFuture<List<T>> result = new CompletableFuture<>();
+		if (futures.isEmpty()) {
+			result.complete(Collections.emptyList());
+			return result;
+		}
+		Object[] results = new Object[futures.size()];
+		AtomicInteger remaining = new AtomicInteger(futures.size());
+		for (int i = 0; i < futures.size(); i++) {
+			int index = i;
+			futures.get(i).whenComplete((value,throwable) -> {
+				if (throwable != null) {
+					result.completeExceptionally(unwrap(throwable));
+					return;
+				}
+				results[index] = value;
+				if (remaining.decrementAndGet() == 0) result.complete(list(results));
+			});
+		}
+		result.whenComplete((list,throwable) -> {
+			if (throwable == null) return;
+			for (CompletableFuture<? extends T> future : futures) {
+				future.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> list(Object[] results) {
+		return (List<T>) Arrays.asList(results);
+	}
+
+	/**
+	 * 限制并发数的全部完成:同时至多concurrency个任务执行中,完成一个启动下一个
+	 * 任一异常立即以该异常结束,取消执行中任务且不再启动后续任务
+	 * @param inputs 输入集合
+	 * @param concurrency 最大并发数
+	 * @param function 按输入启动异步任务的方法
+	 * @return 返回按输入顺序排列的结果集合
+	 */
+	static <I,R> CompletableFuture<List<R>> allOf(Collection<? extends I> inputs, int concurrency, Function<? super I,? extends CompletionStage<R>> function) {
+		if (concurrency <= 0) throw new IllegalArgumentException("并发数需大于0");
+		return new BoundedAllOf<I,R>(new ArrayList<>(inputs),concurrency,function).start();
+	}
+
+	private static final class BoundedAllOf<I,R> {
+
+		private final List<I> INPUTS;
+
+		private final Function<? super I,? extends CompletionStage<R>> FUNCTION;
+
+		private final Object[] RESULTS;
+
+		private final CompletableFuture<List<R>> RESULT = new CompletableFuture<>();
+
+		/**
+		 * 执行中任务
+		 */
+		private final Set<CompletableFuture<R>> RUNNING = ConcurrentHashMap.newKeySet();
+
+		/**
+		 * 剩余可启动任务数
+		 */
+		private final AtomicInteger PERMITS;
+
+		private final AtomicInteger REMAINING;
+
+		/**
+		 * 启动循环进入次数:保证同一时间只有一个线程启动任务,同步完成的任务不会递归启动
+		 */
+		private final AtomicInteger WIP = new AtomicInteger();
+
+		/**
+		 * 下一个启动任务下标:仅在启动循环内访问
+		 */
+		private int next;
+
+		private BoundedAllOf(List<I> inputs, int concurrency, Function<? super I,? extends CompletionStage<R>> function) {
+			INPUTS = inputs;
+			FUNCTION = function;
+			RESULTS = new Object[inputs.size()];
+			PERMITS = new AtomicInteger(concurrency);
+			REMAINING = new AtomicInteger(inputs.size());
+		}
+
+		private CompletableFuture<List<R>> start() {
+			if (INPUTS.isEmpty()) {
+				RESULT.complete(Collections.emptyList());
+				return RESULT;
+			}
+			RESULT.whenComplete((list,throwable) -> {
+				if (throwable == null) return;
+				for (CompletableFuture<R> future : RUNNING) {
+					future.cancel(true);
+				}
+			});
+			drain();
+			return RESULT;
+		}
+
+		private void drain() {
+			if (WIP.getAndIncrement() != 0) return;
+			do {
+				while (next < INPUTS.size() && !RESULT.isDone() && PERMITS.get() > 0) {
+					PERMITS.decrementAndGet();
+					launch(next++);
+				}
+			} while (WIP.decrementAndGet() != 0);
+		}
+
+		private void launch(int index) {
+			CompletableFuture<R> future;
+			try {
+				future = FUNCTION.apply(INPUTS.get(index)).toCompletableFuture();
+			} catch (Throwable throwable) {
+				RESULT.completeExceptionally(throwable);
+				return;
+			}
+			RUNNING.add(future);
+			// 添加后已失败则取消,避免遗漏
+			if (RESULT.isCompletedExceptionally()) future.cancel(true);
+			future.whenComplete((value,throwable) -> {
+				RUNNING.remove(future);
+				if (throwable != null) {
+					RESULT.completeExceptionally(unwrap(throwable));
+					return;
+				}
+				RESULTS[index] = value;
+				if (REMAINING.decrementAndGet() == 0) {
+					RESULT.complete(list(RESULTS));
+					return;
+				}
+				PERMITS.incrementAndGet();
+				drain();
+			});
+		}
+	}
+}
@@ -5,11 +5,21 @@ import kazusa.common.codeoptimize.operateinterface.operate;
 import kazusa.string.StringUtil;
 import kazusa.thread.threadpool.CustomConfigThreadPool;
 import kazusa.thread.threadpool.CustomThreadPool;
+import kazusa.thread.threadpool.InstrumentedExecutorService;
+import kazusa.thread.threadpool.NamedThreadFactory;
 import kazusa.thread.threadpool.ThreadPool;
+import kazusa.thread.threadpool.VirtualThreadPool;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -32,7 +42,7 @@ public class ThreadUtil {
 	private static Thread daemonThread;
 
 	/**
-	 * 守护线程
+	 * 守护线程:每次调用创建一个线程,周期任务使用{@link #scheduleWithFixedDelay(Runnable, long, long, TimeUnit)}
 	 * @param operation 传入守护线程实现类
 	 * @param threadName 线程名
 	 */
@@ -47,6 +57,95 @@ public class ThreadUtil {
 		daemonThread.start();
 	}
 
+	/**
+	 * 共享时间轮:10毫秒刻度,512个桶,到期任务由cpu核心数 + 1个守护线程执行
+	 * 到期任务需短小,阻塞任务使用scheduleBlocking交由IO执行器执行,避免占满执行线程饿死其他定时任务
+	 */
+	private static class TimerHolder {
+
+		private static final TimingWheel TIMER = new TimingWheel
+		(
+			10,TimeUnit.MILLISECONDS,512,
+			new NamedThreadFactory("时间轮",true),
+			newDaemonPool("定时任务",getTypePoolSize("CPU"))
+		);
+	}
+
+	/**
+	 * @return 返回共享时间轮:所有定时任务共用一个时钟线程
+	 */
+	public static TimingWheel getTimer() {
+		return TimerHolder.TIMER;
+	}
+
+	/**
+	 * 添加一次性定时任务
+	 * @param task 任务
+	 * @param delay 延迟时间
+	 * @param timeUnit 延迟时间单位
+	 * @return 返回任务句柄,可取消
+	 */
+	public static TimingWheel.Timeout schedule(Runnable task, long delay, TimeUnit timeUnit) {
+		return getTimer().schedule(task,delay,timeUnit);
+	}
+
+	/**
+	 * 添加固定延迟周期任务:替代守护线程循环休眠
+	 * @param task 任务
+	 * @param initialDelay 首次执行延迟时间
+	 * @param delay 每次执行结束后的间隔
+	 * @param timeUnit 时间单位
+	 * @return 返回任务句柄,可取消
+	 */
+	public static TimingWheel.Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit timeUnit) {
+		return getTimer().scheduleWithFixedDelay(task,initialDelay,delay,timeUnit);
+	}
+
+	/**
+	 * 添加一次性阻塞定时任务:到期后交由IO执行器执行,不占用时间轮执行线程
+	 * @param task 任务
+	 * @param delay 延迟时间
+	 * @param timeUnit 延迟时间单位
+	 * @return 返回任务句柄,可取消
+	 */
+	public static TimingWheel.Timeout scheduleBlocking(Runnable task, long delay, TimeUnit timeUnit) {
+		return schedule(() -> executeBlocking(task),delay,timeUnit);
+	}
+
+	/**
+	 * 添加固定延迟阻塞周期任务:到期后交由IO执行器执行,上一次仍未结束时跳过本次
+	 * @param task 任务
+	 * @param initialDelay 首次执行延迟时间
+	 * @param delay 每次投递后的间隔
+	 * @param timeUnit 时间单位
+	 * @return 返回任务句柄,可取消
+	 */
+	public static TimingWheel.Timeout scheduleBlockingWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit timeUnit) {
+		AtomicBoolean running = new AtomicBoolean(false);
+		return scheduleWithFixedDelay(() -> {
+			if (!running.compareAndSet(false,true)) return;
+			executeBlocking(() -> {
+				try {
+					task.run();
+				} finally {
+					running.set(false);
+				}
+			});
+		},initialDelay,delay,timeUnit);
+	}
+
+	/**
+	 * 交由IO执行器执行,IO执行器拒绝时在当前线程执行
+	 * @param task 任务
+	 */
+	private static void executeBlocking(Runnable task) {
+		try {
+			getExecutor("IO").execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
 	/**
 	 * @param poolType 传入要创建池的类型
 	 * @return 返回对应类型Pool的最大资源数
@@ -102,29 +201,230 @@ public class ThreadUtil {
 					用于控制 WorkQueue 的工作模式:队列 -- 反队列
 				 */
 				return new ForkJoinPool(threadPool.getCpuCores(),ForkJoinPool.defaultForkJoinWorkerThreadFactory,null,true);
+			case "虚拟线程":
+				/*
+					虚拟线程池:每个任务一个虚拟线程,适用于大量阻塞IO任务
+					并发任务数由线程池参数对象concurrency限制,0不限制
+					JDK21以下退化为有界平台线程池:线程数不超过concurrency(0时为2 * cpu核心数 + 1),其余任务排队
+				 */
+				return new VirtualThreadPool(threadPool);
 			default:
 				return null;
 		}
 	}
 
 	/**
-	 * 打印线程池的状态
+	 * 监控线程池:记录任务排队等待时长,执行耗时,拒绝数与吞吐量并注册JMX
+	 * @param name 线程池名
+	 * @param executorService 线程池工厂创建的线程池
+	 * @return 返回监控线程池,通过getExecutorMetrics()读取指标
+	 * @throws Exception
+	 */
+	public static InstrumentedExecutorService instrument(String name, ExecutorService executorService) throws Exception {
+		InstrumentedExecutorService instrumented = new InstrumentedExecutorService(name,executorService);
+		instrumented.registerMBean();
+		return instrumented;
+	}
+
+	/**
+	 * 打印线程池的状态:由共享时间轮周期打印
 	 * @param threadPool 线程池
 	 * @param time 开始操作延时时间
 	 * @param timeout 周期执行时间
 	 * @param timeUnit 执行时间单位
+	 * @deprecated 使用{@link #instrument(String,ExecutorService)}提交任务并读取指标
 	 */
+	@Deprecated
 	public static void printThreadPoolStatus(ThreadPoolExecutor threadPool,long time,long timeout,TimeUnit timeUnit) {
-		new ScheduledThreadPoolExecutor(1,new ThreadPool().getThreadFactory())
-				// 提交定期操作,传入开始操作延时时间,周期执行时间,执行时间单位
-				.scheduleAtFixedRate(() -> {
-					System.out.println("=========================");
-					System.out.println("线程池当前线程数:" + threadPool.getPoolSize());
-					System.out.println("正在执行任务的线程数:" +  threadPool.getActiveCount());
-					System.out.println("已完成任务数量:" + threadPool.getCompletedTaskCount());
-					System.out.println("队列任务数:" + threadPool.getQueue().size());
-					System.out.println("=========================");
-				}, time,timeout,timeUnit);
+		scheduleWithFixedDelay(() -> {
+			System.out.println("=========================");
+			System.out.println("线程池当前线程数:" + threadPool.getPoolSize());
+			System.out.println("正在执行任务的线程数:" +  threadPool.getActiveCount());
+			System.out.println("已完成任务数量:" + threadPool.getCompletedTaskCount());
+			System.out.println("队列任务数:" + threadPool.getQueue().size());
+			System.out.println("=========================");
+		},time,timeout,timeUnit);
+	}
+
+	/**
+	 * 并行映射:在公共Fork/Join线程池中按区间拆分执行
+	 * @param list 元素集合
+	 * @param mapper 映射方法
+	 * @return 返回按原顺序排列的映射结果
+	 */
+	public static <T,R> List<R> parallelMap(List<T> list, Function<? super T,? extends R> mapper) {
+		return ForkJoinPool.commonPool().invoke(ParallelTask.map(ParallelTask.getter(list),list.size(),mapper,ForkJoinPool.commonPool()));
+	}
+
+	/**
+	 * 并行映射
+	 * @param array 元素数组
+	 * @param mapper 映射方法
+	 * @return 返回按原顺序排列的映射结果
+	 */
+	public static <T,R> List<R> parallelMap(T[] array, Function<? super T,? extends R> mapper) {
+		return ForkJoinPool.commonPool().invoke(ParallelTask.map(i -> array[i],array.length,mapper,ForkJoinPool.commonPool()));
+	}
+
+	/**
+	 * 并行映射:异步执行,取消返回任务时所有区间尽快停止
+	 * @param pool 多队列线程池
+	 * @param list 元素集合
+	 * @param mapper 映射方法
+	 * @return 返回并行任务,get()获取按原顺序排列的映射结果
+	 */
+	public static <T,R> ForkJoinTask<List<R>> parallelMap(ForkJoinPool pool, List<T> list, Function<? super T,? extends R> mapper) {
+		return pool.submit(ParallelTask.map(ParallelTask.getter(list),list.size(),mapper,pool));
+	}
+
+	/**
+	 * 并行归约
+	 * @param list 元素集合
+	 * @param identity 初始值,需满足 operator(identity,x) = x
+	 * @param operator 满足结合律的归约方法
+	 * @return 返回归约结果
+	 */
+	public static <T> T parallelReduce(List<T> list, T identity, BinaryOperator<T> operator) {
+		return ForkJoinPool.commonPool().invoke(ParallelTask.reduce(ParallelTask.getter(list),list.size(),identity,operator,ForkJoinPool.commonPool()));
+	}
+
+	/**
+	 * 并行归约
+	 * @param array 元素数组
+	 * @param identity 初始值,需满足 operator(identity,x) = x
+	 * @param operator 满足结合律的归约方法
+	 * @return 返回归约结果
+	 */
+	public static <T> T parallelReduce(T[] array, T identity, BinaryOperator<T> operator) {
+		return ForkJoinPool.commonPool().invoke(ParallelTask.reduce(i -> array[i],array.length,identity,operator,ForkJoinPool.commonPool()));
+	}
+
+	/**
+	 * 并行归约:异步执行,取消返回任务时所有区间尽快停止
+	 * @param pool 多队列线程池
+	 * @param list 元素集合
+	 * @param identity 初始值,需满足 operator(identity,x) = x
+	 * @param operator 满足结合律的归约方法
+	 * @return 返回并行任务,get()获取归约结果
+	 */
+	public static <T> ForkJoinTask<T> parallelReduce(ForkJoinPool pool, List<T> list, T identity, BinaryOperator<T> operator) {
+		return pool.submit(ParallelTask.reduce(ParallelTask.getter(list),list.size(),identity,operator,pool));
+	}
+
+	/**
+	 * 并行遍历
+	 * @param list 元素集合
+	 * @param action 遍历操作
+	 */
+	public static <T> void parallelForEach(List<T> list, Consumer<? super T> action) {
+		ForkJoinPool.commonPool().invoke(ParallelTask.forEach(ParallelTask.getter(list),list.size(),action,ForkJoinPool.commonPool()));
+	}
+
+	/**
+	 * 并行遍历
+	 * @param array 元素数组
+	 * @param action 遍历操作
+	 */
+	public static <T> void parallelForEach(T[] array, Consumer<? super T> action) {
+		ForkJoinPool.commonPool().invoke(ParallelTask.forEach(i -> array[i],array.length,action,ForkJoinPool.commonPool()));
+	}
+
+	/**
+	 * 并行遍历:异步执行,取消返回任务时所有区间尽快停止
+	 * @param pool 多队列线程池
+	 * @param list 元素集合
+	 * @param action 遍历操作
+	 * @return 返回并行任务
+	 */
+	public static <T> ForkJoinTask<Void> parallelForEach(ForkJoinPool pool, List<T> list, Consumer<? super T> action) {
+		return pool.submit(ParallelTask.forEach(ParallelTask.getter(list),list.size(),action,pool));
+	}
+
+	/**
+	 * 命名执行器
+	 */
+	private static final Map<String,ExecutorService> EXECUTORS = new ConcurrentHashMap<>();
+
+	/**
+	 * 获取命名执行器,内置:
+	 * CPU:cpu核心数 + 1个线程,用于计算
+	 * IO:支持虚拟线程时每个任务一个虚拟线程,否则2 * cpu核心数 + 1个线程,用于阻塞IO
+	 * @param name 执行器名
+	 * @return 返回执行器
+	 */
+	public static ExecutorService getExecutor(String name) {
+		ExecutorService executorService = EXECUTORS.computeIfAbsent(name,key -> {
+			if (key.equals("CPU")) return newDaemonPool(key,getTypePoolSize(key));
+			if (key.equals("IO")) {
+				if (NamedThreadFactory.isVirtualSupported()) return new VirtualThreadPool(0,NamedThreadFactory.ofVirtual(key));
+				return newDaemonPool(key,getTypePoolSize(key));
+			}
+			return null;
+		});
+		if (executorService == null) throw new IllegalArgumentException("未注册执行器:" + name);
+		return executorService;
+	}
+
+	/**
+	 * 注册命名执行器
+	 * @param name 执行器名
+	 * @param executorService 执行器
+	 */
+	public static void registerExecutor(String name, ExecutorService executorService) {
+		EXECUTORS.put(name,executorService);
+	}
+
+	/**
+	 * @param name 线程名前缀
+	 * @param threads 线程数
+	 * @return 返回无界队列守护线程池
+	 */
+	private static ExecutorService newDaemonPool(String name, int threads) {
+		ThreadPool threadPool = new ThreadPool(threads,threads,new LinkedBlockingQueue<>());
+		threadPool.setThreadFactory(new NamedThreadFactory(name,true));
+		return new CustomThreadPool(threadPool);
+	}
+
+	/**
+	 * 创建异步流水线
+	 * @param executor 首个阶段执行器名
+	 * @param supplier 首个阶段
+	 * @return 返回流水线
+	 */
+	public static <T> Pipeline<T> pipeline(String executor, Supplier<T> supplier) {
+		return Pipeline.start(executor,supplier,0,TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 创建异步流水线
+	 * @param executor 首个阶段执行器名
+	 * @param supplier 首个阶段
+	 * @param timeout 首个阶段超时时间
+	 * @param timeUnit 超时时间单位
+	 * @return 返回流水线
+	 */
+	public static <T> Pipeline<T> pipeline(String executor, Supplier<T> supplier, long timeout, TimeUnit timeUnit) {
+		return Pipeline.start(executor,supplier,timeout,timeUnit);
+	}
+
+	/**
+	 * 全部完成:任一异常立即以该异常结束并取消其余未完成任务
+	 * @param futures 异步结果集合
+	 * @return 返回按原顺序排列的结果集合
+	 */
+	public static <T> CompletableFuture<List<T>> allOf(List<? extends CompletableFuture<? extends T>> futures) {
+		return Pipeline.allOf(futures);
+	}
+
+	/**
+	 * 限制并发数的全部完成:同时至多concurrency个任务执行中,任一异常立即结束并取消执行中任务
+	 * @param inputs 输入集合
+	 * @param concurrency 最大并发数
+	 * @param function 按输入启动异步任务的方法
+	 * @return 返回按输入顺序排列的结果集合
+	 */
+	public static <I,R> CompletableFuture<List<R>> allOf(Collection<? extends I> inputs, int concurrency, Function<? super I,? extends CompletionStage<R>> function) {
+		return Pipeline.allOf(inputs,concurrency,function);
 	}
 
 	private static final ReentrantLock LOCK = new ReentrantLock();
@@ -0,0 +1,436 @@
+package kazusa.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮定时器:一个时钟线程按刻度推进环形桶数组,到期任务交由执行器执行
+ * 添加与取消仅入队,由时钟线程在下一刻度放入或移出桶,时间复杂度O(1)
+ * 定时精度为一个刻度,适用于大量连接池维护、租约检查等低精度定时任务
+ * @author kazusa
+ * @version 1.0.0
+ * @see ThreadUtil#schedule(Runnable, long, TimeUnit)
+ */
+public class TimingWheel {
+
+	private static final int INIT = 0;
+
+	private static final int STARTED = 1;
+
+	private static final int STOPPED = 2;
+
+	private static final int TIMEOUT_WAITING = 0;
+
+	private static final int TIMEOUT_CANCELLED = 1;
+
+	private static final int TIMEOUT_EXPIRED = 2;
+
+	/**
+	 * 每个刻度处理新增任务数上限:避免持续添加阻塞时钟推进
+	 */
+	private static final int TRANSFER_LIMIT = 100000;
+
+	/**
+	 * 刻度时长:纳秒
+	 */
+	private final long TICK;
+
+	private final Bucket[] WHEEL;
+
+	private final int MASK;
+
+	/**
+	 * 待放入桶的任务
+	 */
+	private final Queue<Timeout> PENDING = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 待移出桶的已取消任务
+	 */
+	private final Queue<Timeout> CANCELLED = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 未到期任务数
+	 */
+	private final AtomicLong SIZE = new AtomicLong(0);
+
+	private final Executor EXECUTOR;
+
+	private final Thread WORKER;
+
+	private final AtomicInteger STATE = new AtomicInteger(INIT);
+
+	private final CountDownLatch START = new CountDownLatch(1);
+
+	/**
+	 * 时钟启动时间:纳秒,任务到期时间均相对于此时间
+	 */
+	private volatile long startTime;
+
+	/**
+	 * 已推进刻度数:仅时钟线程访问
+	 */
+	private long tick;
+
+	/**
+	 * 停止时未执行的任务
+	 */
+	private final List<Timeout> UNPROCESSED = new ArrayList<>();
+
+	/**
+	 * @param tick 刻度时长
+	 * @param timeUnit 刻度时长单位
+	 * @param wheelSize 桶数:向上取整为2的幂
+	 * @param threadFactory 时钟线程工厂
+	 * @param executor 到期任务执行器
+	 */
+	public TimingWheel(long tick, TimeUnit timeUnit, int wheelSize, ThreadFactory threadFactory, Executor executor) {
+		if (tick <= 0) throw new IllegalArgumentException("刻度时长需大于0");
+		if (wheelSize <= 0 || wheelSize > 1 << 30) throw new IllegalArgumentException("桶数需在1至2^30之间");
+		TICK = Math.max(timeUnit.toNanos(tick),TimeUnit.MILLISECONDS.toNanos(1));
+		int size = 1;
+		while (size < wheelSize) size <<= 1;
+		WHEEL = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			WHEEL[i] = new Bucket();
+		}
+		MASK = size - 1;
+		EXECUTOR = executor;
+		WORKER = threadFactory.newThread(this::run);
+	}
+
+	/**
+	 * 定时任务句柄
+	 */
+	public final class Timeout implements Runnable {
+
+		private final Runnable TASK;
+
+		/**
+		 * 周期:纳秒,0为一次性任务
+		 */
+		private final long PERIOD;
+
+		private final AtomicInteger state = new AtomicInteger(TIMEOUT_WAITING);
+
+		/**
+		 * 到期时间:相对时钟启动时间的纳秒数
+		 */
+		private long deadline;
+
+		/**
+		 * 剩余轮数:仅时钟线程访问
+		 */
+		private long remainingRounds;
+
+		private Timeout prev;
+
+		private Timeout next;
+
+		private Bucket bucket;
+
+		private Timeout(Runnable task, long deadline, long period) {
+			TASK = task;
+			this.deadline = deadline;
+			PERIOD = period;
+		}
+
+		/**
+		 * 取消任务:执行中的任务不受影响,周期任务不再执行下一次
+		 * @return 已取消或一次性任务已到期返回false
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(TIMEOUT_WAITING,TIMEOUT_CANCELLED)) return false;
+			SIZE.decrementAndGet();
+			CANCELLED.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == TIMEOUT_CANCELLED;
+		}
+
+		/**
+		 * @return 一次性任务已到期返回true
+		 */
+		public boolean isExpired() {
+			return state.get() == TIMEOUT_EXPIRED;
+		}
+
+		/**
+		 * @return 返回是否为周期任务
+		 */
+		public boolean isPeriodic() {
+			return PERIOD > 0;
+		}
+
+		/**
+		 * @return 返回原始任务
+		 */
+		public Runnable getTask() {
+			return TASK;
+		}
+
+		/**
+		 * 到期:一次性任务标记已到期后交由执行器执行,周期任务未取消时交由执行器执行
+		 */
+		private void expire() {
+			if (PERIOD == 0 ? !state.compareAndSet(TIMEOUT_WAITING,TIMEOUT_EXPIRED) : state.get() != TIMEOUT_WAITING) return;
+			if (PERIOD == 0) SIZE.decrementAndGet();
+			try {
+				EXECUTOR.execute(this);
+			} catch (RejectedExecutionException e) {
+				System.err.println("定时任务执行器拒绝任务:" + e);
+				// 周期任务被拒绝时顺延至下一周期
+				reschedule();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				TASK.run();
+			} catch (Throwable throwable) {
+				System.err.println("定时任务异常:" + throwable);
+			} finally {
+				reschedule();
+			}
+		}
+
+		/**
+		 * 周期任务按固定延迟重新放入时间轮:上次执行结束后开始计时,同一任务不会并发执行
+		 */
+		private void reschedule() {
+			if (PERIOD == 0 || state.get() != TIMEOUT_WAITING || STATE.get() == STOPPED) return;
+			deadline = System.nanoTime() + PERIOD - startTime;
+			PENDING.add(this);
+		}
+
+		/**
+		 * 未到期任务重新放入时间轮,下一刻度按截止时间重新计算所在桶
+		 */
+		private void requeue() {
+			if (!isCancelled()) PENDING.add(this);
+		}
+
+		private void remove() {
+			if (bucket != null) bucket.remove(this);
+		}
+	}
+
+	/**
+	 * 桶:双向链表,仅时钟线程访问
+	 */
+	private static final class Bucket {
+
+		private Timeout head;
+
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+				return;
+			}
+			tail.next = timeout;
+			timeout.prev = tail;
+			tail = timeout;
+		}
+
+		private Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) timeout.prev.next = next;
+			if (timeout.next != null) timeout.next.prev = timeout.prev;
+			if (timeout == head) head = next;
+			if (timeout == tail) tail = timeout.prev;
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		/**
+		 * 执行本轮到期任务,其余任务剩余轮数减一
+		 * @param deadline 当前时间:相对时钟启动时间的纳秒数
+		 */
+		private void expire(long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				if (timeout.remainingRounds <= 0) {
+					Timeout next = remove(timeout);
+					if (timeout.deadline <= deadline) timeout.expire();
+					// 未到期任务放入错误的桶时重新放入时间轮,不丢弃
+					else timeout.requeue();
+					timeout = next;
+				} else if (timeout.isCancelled()) {
+					timeout = remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+
+		private void clear(List<Timeout> list) {
+			while (head != null) {
+				Timeout timeout = head;
+				remove(timeout);
+				if (!timeout.isExpired() && !timeout.isCancelled()) list.add(timeout);
+			}
+		}
+	}
+
+	/**
+	 * 添加一次性任务
+	 * @param task 任务
+	 * @param delay 延迟时间
+	 * @param timeUnit 延迟时间单位
+	 * @return 返回任务句柄
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit timeUnit) {
+		return add(task,timeUnit.toNanos(delay),0);
+	}
+
+	/**
+	 * 添加固定延迟周期任务:每次执行结束后间隔delay再次执行
+	 * @param task 任务
+	 * @param initialDelay 首次执行延迟时间
+	 * @param delay 执行间隔
+	 * @param timeUnit 时间单位
+	 * @return 返回任务句柄
+	 */
+	public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit timeUnit) {
+		if (delay <= 0) throw new IllegalArgumentException("执行间隔需大于0");
+		return add(task,timeUnit.toNanos(initialDelay),timeUnit.toNanos(delay));
+	}
+
+	private Timeout add(Runnable task, long delay, long period) {
+		if (task == null) throw new NullPointerException();
+		start();
+		long deadline = System.nanoTime() + Math.max(delay,0) - startTime;
+		// 防止溢出
+		if (delay > 0 && deadline < 0) deadline = Long.MAX_VALUE;
+		Timeout timeout = new Timeout(task,deadline,period);
+		SIZE.incrementAndGet();
+		PENDING.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * 首次添加任务时启动时钟线程
+	 */
+	private void start() {
+		switch (STATE.get()) {
+			case INIT:
+				if (STATE.compareAndSet(INIT,STARTED)) WORKER.start();
+				break;
+			case STARTED:
+				break;
+			default:
+				throw new RejectedExecutionException("时间轮已停止");
+		}
+		// 等待时钟线程初始化启动时间
+		while (startTime == 0) {
+			try {
+				START.await();
+			} catch (InterruptedException ignored) {
+				// 启动时间初始化极快,忽略中断继续等待
+			}
+		}
+	}
+
+	private void run() {
+		long now = System.nanoTime();
+		// 0表示未初始化
+		startTime = now == 0 ? 1 : now;
+		START.countDown();
+		while (STATE.get() == STARTED) {
+			long deadline = waitForNextTick();
+			if (deadline < 0) break;
+			removeCancelled();
+			transferPending();
+			WHEEL[(int) (tick & MASK)].expire(deadline);
+			tick++;
+		}
+		for (Bucket bucket : WHEEL) {
+			bucket.clear(UNPROCESSED);
+		}
+		Timeout timeout;
+		while ((timeout = PENDING.poll()) != null) {
+			if (!timeout.isCancelled()) UNPROCESSED.add(timeout);
+		}
+		removeCancelled();
+	}
+
+	/**
+	 * 等待至下一刻度
+	 * @return 返回当前时间:相对时钟启动时间的纳秒数,已停止返回-1
+	 */
+	private long waitForNextTick() {
+		long deadline = TICK * (tick + 1);
+		while (true) {
+			long current = System.nanoTime() - startTime;
+			long sleep = deadline - current;
+			if (sleep <= 0) return current;
+			LockSupport.parkNanos(this,sleep);
+			if (STATE.get() == STOPPED) return -1;
+		}
+	}
+
+	private void transferPending() {
+		for (int i = 0; i < TRANSFER_LIMIT; i++) {
+			Timeout timeout = PENDING.poll();
+			if (timeout == null) return;
+			if (timeout.isCancelled()) continue;
+			long ticks = timeout.deadline / TICK;
+			timeout.remainingRounds = (ticks - tick) / WHEEL.length;
+			// 已过期任务放入当前桶立即执行
+			WHEEL[(int) (Math.max(ticks,tick) & MASK)].add(timeout);
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while ((timeout = CANCELLED.poll()) != null) {
+			timeout.remove();
+		}
+	}
+
+	/**
+	 * @return 返回未到期及未取消任务数
+	 */
+	public long size() {
+		return SIZE.get();
+	}
+
+	/**
+	 * 停止时钟线程,不再接收任务
+	 * @return 返回未执行的任务句柄
+	 */
+	public List<Timeout> stop() {
+		if (Thread.currentThread() == WORKER) throw new IllegalStateException("不能在时钟线程内停止时间轮");
+		if (STATE.getAndSet(STOPPED) != STARTED) return new ArrayList<>();
+		boolean interrupted = false;
+		while (WORKER.isAlive()) {
+			LockSupport.unpark(WORKER);
+			try {
+				WORKER.join(100);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		return new ArrayList<>(UNPROCESSED);
+	}
+}
@@ -0,0 +1,107 @@
+package kazusa.thread.threadpool;
+
+/**
+ * 自适应线程数调整指标快照
+ * @author kazusa
+ * @version 1.0.0
+ * @see CustomThreadPool#getAdaptiveMetrics()
+ */
+public class AdaptiveMetrics {
+
+	/**
+	 * 目标线程数
+	 */
+	private final int target;
+
+	/**
+	 * 当前线程数
+	 */
+	private final int threads;
+
+	/**
+	 * 目标线程数下限:核心线程数
+	 */
+	private final int min;
+
+	/**
+	 * 目标线程数上限:最大线程数
+	 */
+	private final int max;
+
+	/**
+	 * 最近周期任务等待时间与cpu时间之比
+	 */
+	private final double waitComputeRatio;
+
+	/**
+	 * 最近周期吞吐量:每秒完成任务数
+	 */
+	private final double throughput;
+
+	/**
+	 * 目标线程数调整次数
+	 */
+	private final long adjustments;
+
+	/**
+	 * 最近周期决策:增加 减少 保持 空闲
+	 */
+	private final String decision;
+
+	AdaptiveMetrics(int target, int threads, int min, int max, double waitComputeRatio, double throughput, long adjustments, String decision) {
+		this.target = target;
+		this.threads = threads;
+		this.min = min;
+		this.max = max;
+		this.waitComputeRatio = waitComputeRatio;
+		this.throughput = throughput;
+		this.adjustments = adjustments;
+		this.decision = decision;
+	}
+
+	public int getTarget() {
+		return target;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public double getWaitComputeRatio() {
+		return waitComputeRatio;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public long getAdjustments() {
+		return adjustments;
+	}
+
+	public String getDecision() {
+		return decision;
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveMetrics{" +
+				"target=" + target +
+				", threads=" + threads +
+				", min=" + min +
+				", max=" + max +
+				", waitComputeRatio=" + String.format("%.2f",waitComputeRatio) +
+				", throughput=" + String.format("%.1f",throughput) +
+				", adjustments=" + adjustments +
+				", decision=" + decision +
+				"}";
+	}
+}
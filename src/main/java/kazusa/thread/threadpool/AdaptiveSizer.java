@@ -0,0 +1,238 @@
+package kazusa.thread.threadpool;
+
+import kazusa.thread.ThreadUtil;
+import kazusa.thread.TimingWheel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应线程数控制器:爬山法调整目标线程数
+ * 每个任务记录执行耗时与线程cpu时间,差值视为等待时间,按 (等待时间与cpu时间之比 + 1) * cpu核心数 估算线程数
+ * 每周期比较吞吐量:上次调整后吞吐量下降则反向调整,持平则向估算值靠拢,提升则继续同向调整
+ * 未开启线程cpu时间测量时不修改jvm全局设置,只按执行耗时与吞吐量爬山:队列积压时向最大线程数试探
+ * 由共享时间轮周期调整,弱引用线程池,不额外占用线程
+ * @author kazusa
+ * @version 1.0.0
+ * @see CustomThreadPool
+ */
+class AdaptiveSizer implements Runnable {
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * 当前jvm是否支持测量线程cpu时间
+	 */
+	private static final boolean CPU_TIME_SUPPORTED = cpuTimeSupported();
+
+	/**
+	 * 吞吐量变化容差:变化不超过5%视为持平
+	 */
+	private static final double TOLERANCE = 0.05;
+
+	private static boolean cpuTimeSupported() {
+		try {
+			return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
+		} catch (UnsupportedOperationException | SecurityException e) {
+			return false;
+		}
+	}
+
+	private final WeakReference<CustomThreadPool> POOL;
+
+	private final int MIN;
+
+	private final int MAX;
+
+	/**
+	 * 调整周期:纳秒
+	 */
+	private final long PERIOD;
+
+	private final int CPU_CORES = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 任务执行耗时累计:纳秒
+	 */
+	private final LongAdder WALL_TIME = new LongAdder();
+
+	/**
+	 * 任务cpu时间累计:纳秒
+	 */
+	private final LongAdder CPU_TIME = new LongAdder();
+
+	/**
+	 * 完成任务数累计
+	 */
+	private final LongAdder COMPLETED = new LongAdder();
+
+	// 以下为调整状态,仅控制线程写入
+	private volatile int target;
+
+	private volatile double ratio;
+
+	private volatile double throughput;
+
+	private volatile long adjustments;
+
+	private volatile String decision = "空闲";
+
+	/**
+	 * 本周期是否测得cpu时间:线程cpu时间测量被关闭时为false
+	 */
+	private volatile boolean cpuMeasured;
+
+	/**
+	 * 定时调整任务句柄
+	 */
+	private volatile TimingWheel.Timeout timeout;
+
+	/**
+	 * 上次调整方向:1增加 -1减少 0未调整
+	 */
+	private int direction;
+
+	private double lastThroughput;
+
+	private long lastTime = System.nanoTime();
+
+	private long lastCompleted;
+
+	private long lastWallTime;
+
+	private long lastCpuTime;
+
+	/**
+	 * @param pool 调整的线程池
+	 * @param min 目标线程数下限
+	 * @param max 目标线程数上限
+	 * @param period 调整周期
+	 * @param timeUnit 调整周期单位
+	 */
+	AdaptiveSizer(CustomThreadPool pool, int min, int max, long period, TimeUnit timeUnit) {
+		POOL = new WeakReference<>(pool);
+		MIN = min;
+		MAX = Math.max(min,max);
+		PERIOD = timeUnit.toNanos(period);
+		target = min;
+	}
+
+	/**
+	 * @return 当前线程cpu时间,不支持或未开启测量返回-1
+	 */
+	long cpuTime() {
+		return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1L;
+	}
+
+	/**
+	 * 记录一个任务耗时
+	 * @param start 任务开始时间:纳秒
+	 * @param cpuStart 任务开始时线程cpu时间
+	 */
+	void record(long start, long cpuStart) {
+		long wall = System.nanoTime() - start;
+		WALL_TIME.add(wall);
+		long cpuEnd = cpuStart < 0 ? -1L : cpuTime();
+		// 未测得cpu时间时cpu时间记为执行耗时
+		cpuMeasured = cpuEnd >= 0;
+		CPU_TIME.add(cpuEnd >= 0 ? Math.min(wall,cpuEnd - cpuStart) : wall);
+		COMPLETED.increment();
+	}
+
+	/**
+	 * 在共享时间轮上开始周期调整
+	 */
+	void start() {
+		timeout = ThreadUtil.scheduleWithFixedDelay(this,PERIOD,PERIOD,TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 一次调整:线程池关闭或已被回收后取消定时任务
+	 */
+	@Override
+	public void run() {
+		CustomThreadPool pool = POOL.get();
+		if (pool == null || pool.isShutdown()) {
+			TimingWheel.Timeout current = timeout;
+			if (current != null) current.cancel();
+			return;
+		}
+		adjust(pool);
+	}
+
+	/**
+	 * 按最近周期吞吐量与等待时间调整目标线程数
+	 * @param pool 调整的线程池
+	 */
+	private void adjust(CustomThreadPool pool) {
+		long now = System.nanoTime();
+		long completed = COMPLETED.sum();
+		long wallTime = WALL_TIME.sum();
+		long cpuTime = CPU_TIME.sum();
+		long count = completed - lastCompleted;
+		long wall = wallTime - lastWallTime;
+		long cpu = cpuTime - lastCpuTime;
+		long elapsed = now - lastTime;
+		lastTime = now;
+		lastCompleted = completed;
+		lastWallTime = wallTime;
+		lastCpuTime = cpuTime;
+		if (count == 0) {
+			// 无任务完成不具备比较依据,重新开始爬山,无积压时逐步回落至核心线程数
+			throughput = 0;
+			lastThroughput = 0;
+			direction = 0;
+			decision = "空闲";
+			int size = target;
+			if (size > MIN && pool.queueSize() == 0) {
+				target = size - Math.max(1,(size - MIN) / 2);
+				adjustments++;
+				pool.resize(target);
+			}
+			return;
+		}
+		double throughput = count * 1e9 / elapsed;
+		ratio = cpu > 0 ? Math.max(0,wall - cpu) / (double) cpu : 0;
+		int size = target;
+		// 未测得cpu时间无法估算等待时间:队列积压时向最大线程数试探,否则不偏向任何方向
+		int estimate = cpuMeasured ? clamp((int) Math.round(CPU_CORES * (ratio + 1))) : pool.queueSize() > 0 ? MAX : size;
+		if (direction != 0 && lastThroughput > 0) {
+			// 吞吐量下降:上次调整无效,反向调整
+			if (throughput < lastThroughput * (1 - TOLERANCE)) direction = -direction;
+			// 吞吐量持平:向估算值靠拢
+			else if (throughput <= lastThroughput * (1 + TOLERANCE)) direction = Integer.signum(estimate - size);
+			// 吞吐量提升:继续同向调整
+		} else {
+			direction = Integer.signum(estimate - size);
+		}
+		// 队列无积压时增加线程不会提升吞吐量
+		if (direction > 0 && pool.queueSize() == 0) direction = 0;
+		int next = clamp(size + direction * Math.max(1,Math.abs(estimate - size) / 2));
+		this.throughput = throughput;
+		lastThroughput = throughput;
+		if (next == size) {
+			direction = 0;
+			decision = "保持";
+			return;
+		}
+		decision = next > size ? "增加" : "减少";
+		target = next;
+		adjustments++;
+		pool.resize(next);
+	}
+
+	private int clamp(int size) {
+		return Math.max(MIN,Math.min(MAX,size));
+	}
+
+	/**
+	 * @param threads 当前线程数
+	 * @return 返回调整指标快照
+	 */
+	AdaptiveMetrics snapshot(int threads) {
+		return new AdaptiveMetrics(target,threads,MIN,MAX,ratio,throughput,adjustments,decision);
+	}
+}
@@ -0,0 +1,146 @@
+package kazusa.thread.threadpool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一批任务:每个任务结束时计数,全部结束后完成汇总回调对象
+ * 任务为FutureTask,被拒绝策略丢弃或超过截止时间时取消,同样计入结束
+ * @author kazusa
+ * @version 1.0.0
+ * @param <T> 任务结果类型
+ * @see BatchExecutor
+ */
+final class Batch<T> {
+
+	private final List<Task> TASKS;
+
+	private final Object[] RESULTS;
+
+	private final AtomicInteger REMAINING;
+
+	private final CompletableFuture<List<T>> FUTURE = new CompletableFuture<>();
+
+	/**
+	 * 首个异常,其余异常附加为suppressed
+	 */
+	private Throwable error;
+
+	Batch(Collection<? extends Callable<T>> callables) {
+		TASKS = new ArrayList<>(callables.size());
+		for (Callable<T> callable : callables) {
+			TASKS.add(new Task(callable,TASKS.size()));
+		}
+		RESULTS = new Object[TASKS.size()];
+		REMAINING = new AtomicInteger(TASKS.size());
+		if (TASKS.isEmpty()) FUTURE.complete(Collections.emptyList());
+		// 取消汇总回调对象时取消全部未完成任务
+		FUTURE.whenComplete((list,throwable) -> {
+			if (!FUTURE.isCancelled()) return;
+			for (Task task : TASKS) {
+				task.cancel(true);
+			}
+		});
+	}
+
+	/**
+	 * @param runnables 无返回值任务集合
+	 * @return 返回结果为null的一批任务
+	 */
+	static Batch<Object> of(Collection<? extends Runnable> runnables) {
+		List<Callable<Object>> callables = new ArrayList<>(runnables.size());
+		for (Runnable runnable : runnables) {
+			callables.add(Executors.callable(runnable));
+		}
+		return new Batch<>(callables);
+	}
+
+	/**
+	 * @return 返回待执行任务集合
+	 */
+	List<? extends Runnable> tasks() {
+		return TASKS;
+	}
+
+	CompletableFuture<List<T>> future() {
+		return FUTURE;
+	}
+
+	/**
+	 * 放入线程池失败时以异常结束剩余任务
+	 * @param from 首个未放入任务下标
+	 * @param throwable 异常
+	 */
+	void fail(int from, RuntimeException throwable) {
+		for (int i = from; i < TASKS.size(); i++) {
+			TASKS.get(i).setException(throwable);
+		}
+	}
+
+	/**
+	 * 已放入线程池的任务被撤回时以异常结束
+	 * @param task 该批任务中的任务
+	 * @param throwable 异常
+	 */
+	void fail(Runnable task, RuntimeException throwable) {
+		for (Task t : TASKS) {
+			if (t != task) continue;
+			t.setException(throwable);
+			return;
+		}
+	}
+
+	private final class Task extends FutureTask<T> {
+
+		private final int index;
+
+		private Task(Callable<T> callable, int index) {
+			super(callable);
+			this.index = index;
+		}
+
+		/**
+		 * 重写以便在本包内调用
+		 */
+		@Override
+		protected void setException(Throwable t) {
+			super.setException(t);
+		}
+
+		@Override
+		protected void done() {
+			try {
+				RESULTS[index] = get();
+			} catch (CancellationException e) {
+				error(e);
+			} catch (ExecutionException e) {
+				error(e.getCause());
+			} catch (InterruptedException e) {
+				// 任务已结束,get()不会阻塞
+				Thread.currentThread().interrupt();
+			}
+			if (REMAINING.decrementAndGet() == 0) complete();
+		}
+	}
+
+	private synchronized void error(Throwable throwable) {
+		if (error == null) error = throwable;
+		else if (error != throwable) error.addSuppressed(throwable);
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized void complete() {
+		if (error != null) FUTURE.completeExceptionally(error);
+		else FUTURE.complete((List<T>) Arrays.asList(RESULTS));
+	}
+}
@@ -0,0 +1,28 @@
+package kazusa.thread.threadpool;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 批量提交任务:一次放入一批任务,只创建与唤醒所需数量的工作线程
+ * @author kazusa
+ * @version 1.0.0
+ */
+public interface BatchExecutor {
+
+	/**
+	 * 批量添加任务
+	 * @param runnables 任务集合
+	 * @return 返回全部任务结束后完成的回调对象,任一任务异常或被丢弃则以首个异常完成,其余异常附加为suppressed
+	 */
+	CompletableFuture<Void> executeAll(Collection<? extends Runnable> runnables);
+
+	/**
+	 * 批量提交任务
+	 * @param callables 任务集合
+	 * @return 返回全部任务结束后按提交顺序完成的结果集合,任一任务异常或被丢弃则以首个异常完成,取消时取消全部未完成任务
+	 */
+	<T> CompletableFuture<List<T>> submitAll(Collection<? extends Callable<T>> callables);
+}
@@ -9,7 +9,7 @@ import java.util.concurrent.*;
  * @author kazusa
  * @version 1.0.0
  */
-public class CustomConfigThreadPool implements ExecutorService {
+public class CustomConfigThreadPool implements ExecutorService, BatchExecutor {
 
 	/**
 	 * 自定义JDK线程池对象
@@ -97,6 +97,64 @@ public class CustomConfigThreadPool implements ExecutorService {
 		threadExecutor.execute(command);
 	}
 
+	/**
+	 * 批量添加任务:按任务数预启动核心线程后直接放入队列,队列已满时交由线程池创建非核心线程或执行拒绝策略
+	 * @param runnables 任务集合
+	 * @return 返回全部任务结束后完成的回调对象
+	 * @throws RejectedExecutionException 线程池已关闭
+	 */
+	@Override
+	public CompletableFuture<Void> executeAll(Collection<? extends Runnable> runnables) {
+		return enqueueAll(Batch.of(runnables)).future().thenApply(list -> null);
+	}
+
+	/**
+	 * 批量提交任务
+	 * @param callables 任务集合
+	 * @return 返回全部任务结束后按提交顺序完成的结果集合
+	 * @throws RejectedExecutionException 线程池已关闭
+	 */
+	@Override
+	public <T> CompletableFuture<List<T>> submitAll(Collection<? extends Callable<T>> callables) {
+		return enqueueAll(new Batch<>(callables)).future();
+	}
+
+	/**
+	 * 放入一批任务
+	 * @param batch 一批任务
+	 * @return 返回该批任务
+	 */
+	private <T> Batch<T> enqueueAll(Batch<T> batch) {
+		if (threadExecutor.isShutdown()) throw new RejectedExecutionException("线程池已关闭");
+		List<? extends Runnable> tasks = batch.tasks();
+		int i = 0;
+		try {
+			// 无核心线程时队列中任务无人领取,逐个交由线程池处理
+			int core = threadExecutor.getCorePoolSize();
+			if (core > 0) {
+				int started = threadExecutor.getPoolSize();
+				while (started < Math.min(core,tasks.size()) && threadExecutor.prestartCoreThread()) {
+					started++;
+				}
+				while (i < tasks.size() && queue.offer(tasks.get(i))) {
+					i++;
+				}
+			}
+			for (; i < tasks.size(); i++) {
+				threadExecutor.execute(tasks.get(i));
+			}
+			// 放入队列期间线程池被关闭:与CustomThreadPool相同,撤回仍在队列中的任务并以RejectedExecutionException结束
+			if (threadExecutor.isShutdown()) {
+				for (Runnable task : tasks) {
+					if (queue.remove(task)) batch.fail(task,new RejectedExecutionException("线程池已关闭"));
+				}
+			}
+		} catch (RuntimeException e) {
+			batch.fail(i,e);
+		}
+		return batch;
+	}
+
 	public void shutdown() {
 		threadExecutor.shutdown();
 	}
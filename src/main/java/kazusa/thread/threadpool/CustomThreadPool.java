@@ -1,25 +1,38 @@
 package kazusa.thread.threadpool;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 自定义线程池
  * @author kazusa
  * @version 1.0.0
  */
-public class CustomThreadPool extends AbstractExecutorService {
+public class CustomThreadPool extends AbstractExecutorService implements BatchExecutor {
 
 	/**
-	 * 核心线程数
+	 * 核心线程数:开启自适应线程数时为目标线程数
 	 */
-	private int coreThreadCount;
+	private volatile int coreThreadCount;
 
 	/**
 	 * 最大线程数
@@ -52,9 +65,24 @@ public class CustomThreadPool extends AbstractExecutorService {
 	private TimeUnit timeUnit;
 
 	/**
-	 * 策略选择
+	 * 拒绝策略
+	 */
+	private final RejectionPolicy POLICY;
+
+	/**
+	 * 溢出策略备用队列:未使用溢出策略为null
+	 */
+	private final BlockingQueue<Runnable> OVERFLOW;
+
+	/**
+	 * 线程工厂
 	 */
-	private int isTactics;
+	private final ThreadFactory THREAD_FACTORY;
+
+	/**
+	 * 工作线程集合
+	 */
+	private final Set<Worker> WORKERS = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * cpu核心数
@@ -112,161 +140,528 @@ public class CustomThreadPool extends AbstractExecutorService {
 		// 其他参数
 		time = threadPool.getTime();
 		timeUnit = threadPool.getTimeUnit();
-		isTactics = threadPool.getIsTactics();
+		POLICY = threadPool.getRejectionPolicy();
+		OVERFLOW = POLICY instanceof RejectionPolicy.Overflow ? ((RejectionPolicy.Overflow) POLICY).getQueue() : null;
+		if (OVERFLOW != null && threadPool.isWorkStealing()) throw new IllegalArgumentException("工作窃取模式不支持溢出策略");
+		THREAD_FACTORY = threadPool.getThreadFactory();
+		STEALING = threadPool.isWorkStealing()
+				? new WorkStealingWorkers(coreThreadCount,TASK_QUEUE.size() + TASK_QUEUE.remainingCapacity(),THREAD_FACTORY,this::runTask,nowThreadCount,this::tryTerminate)
+				: null;
+		// 工作窃取模式工作线程数固定
+		SIZER = threadPool.isAdaptive() && STEALING == null
+				? new AdaptiveSizer(this,coreThreadCount,MAX_THREAD_COUNT,threadPool.getAdaptivePeriod(),TimeUnit.MILLISECONDS)
+				: null;
+		if (SIZER != null) SIZER.start();
 	}
 
 	/**
-	 * 初始化线程池
+	 * 自适应线程数控制器:未开启自适应线程数为null
 	 */
-	private void init() {
-		// 创建核心线程
-		for (int i = 0; i < coreThreadCount; i++) {
-			newCoreThread();
+	private final AdaptiveSizer SIZER;
+
+	/**
+	 * 工作窃取执行引擎:未开启工作窃取模式为null
+	 */
+	private final WorkStealingWorkers STEALING;
+
+	/**
+	 * 运行状态:接收新任务
+	 */
+	private static final int RUNNING = 0;
+
+	/**
+	 * 关闭状态:不接收新任务,执行完队列中任务
+	 */
+	private static final int SHUTDOWN = 1;
+
+	/**
+	 * 停止状态:不接收新任务,不执行队列中任务并中断工作线程
+	 */
+	private static final int STOP = 2;
+
+	/**
+	 * 线程池运行状态
+	 */
+	private volatile int runState = RUNNING;
+
+	/**
+	 * 终止信号:关闭后工作线程全部结束时释放,唤醒awaitTermination()等待线程
+	 */
+	private final CountDownLatch TERMINATION = new CountDownLatch(1);
+
+	/**
+	 * 工作线程:自带首个任务,空闲时在任务队列上阻塞等待
+	 * 锁在执行任务期间持有,关闭线程池时只中断未持有锁的空闲线程
+	 * 锁不可重入:任务内调用shutdown()或调整线程数时无法获取自身锁,不会中断正在执行的任务
+	 */
+	private final class Worker extends AbstractQueuedSynchronizer implements Runnable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Runnable firstTask;
+
+		private transient Thread thread;
+
+		private Worker(Runnable firstTask) {
+			this.firstTask = firstTask;
+		}
+
+		@Override
+		public void run() {
+			runWorker(this);
+		}
+
+		@Override
+		protected boolean tryAcquire(int unused) {
+			return compareAndSetState(0,1);
+		}
+
+		@Override
+		protected boolean tryRelease(int unused) {
+			setState(0);
+			return true;
+		}
+
+		private void lock() {
+			acquire(1);
+		}
+
+		private boolean tryLock() {
+			return tryAcquire(1);
+		}
+
+		private void unlock() {
+			release(1);
+		}
+
+		private boolean isLocked() {
+			return getState() != 0;
 		}
 	}
 
 	/**
-	 * 根据队列中是否有任务创建非核心线程
+	 * 创建工作线程
+	 * @param firstTask 首个任务,可为null
+	 * @param core 是否以核心线程数为上限
+	 * @return 达到线程数上限返回false
 	 */
-	private boolean isNewNotCoreThread(Runnable runnable) {
-		if (nowThreadCount.get() <= MAX_THREAD_COUNT && TASK_QUEUE.size() == QUEUE_LENGTH) {
-			notCoreThreadRunnable = runnable;
-			newNotCoreThread();
-			return true;
+	private boolean addWorker(Runnable firstTask,boolean core) {
+		int limit = core ? coreThreadCount : MAX_THREAD_COUNT;
+		while (true) {
+			int count = nowThreadCount.get();
+			if (count >= limit) return false;
+			if (nowThreadCount.compareAndSet(count,count + 1)) break;
 		}
-		return false;
+		// 关闭后只允许创建执行队列剩余任务的工作线程
+		int state = runState;
+		if (state >= STOP || state == SHUTDOWN && firstTask != null) {
+			nowThreadCount.decrementAndGet();
+			tryTerminate();
+			return false;
+		}
+		Worker worker = new Worker(firstTask);
+		Thread thread = THREAD_FACTORY.newThread(worker);
+		if (thread == null) {
+			nowThreadCount.decrementAndGet();
+			tryTerminate();
+			return false;
+		}
+		worker.thread = thread;
+		WORKERS.add(worker);
+		thread.start();
+		// 创建期间线程池被强行关闭
+		if (runState == STOP) thread.interrupt();
+		return true;
 	}
 
 	/**
 	 * 拒绝策略
 	 * @param runnable 任务
-	 * @return 任务
-	 * @throws InterruptedException
 	 */
-	private boolean refuseTactics(Runnable runnable) throws InterruptedException {
-		if (nowThreadCount.get() == MAX_THREAD_COUNT && TASK_QUEUE.size() == QUEUE_LENGTH) {
-			switch (isTactics) {
-				case 0:
-					throw new RuntimeException("线程池超载");
-				case 1:
-					runnable.run();
-					return true;
-				case 2:
-					TASK_QUEUE.poll();
-					TASK_QUEUE.put(runnable);
+	private void refuseTactics(Runnable runnable) {
+		if (runState != RUNNING) throw new RejectedExecutionException("线程池已关闭");
+		POLICY.rejected(runnable,this);
+	}
+
+	/**
+	 * 放入任务队列,不创建工作线程
+	 * @param runnable 任务
+	 * @return 队列已满返回false
+	 * @throws RejectedExecutionException 线程池已关闭
+	 */
+	boolean offerQueue(Runnable runnable) {
+		if (runState != RUNNING) throw new RejectedExecutionException("线程池已关闭");
+		if (STEALING != null) return STEALING.offer(runnable);
+		if (!TASK_QUEUE.offer(runnable)) return false;
+		enqueued(runnable);
+		return true;
+	}
+
+	/**
+	 * 限时等待队列空位放入任务
+	 * @param runnable 任务
+	 * @param timeout 最长等待时间
+	 * @param timeUnit 等待时间单位
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 * @throws RejectedExecutionException 线程池已关闭
+	 */
+	boolean offerQueue(Runnable runnable, long timeout, TimeUnit timeUnit) throws InterruptedException {
+		if (runState != RUNNING) throw new RejectedExecutionException("线程池已关闭");
+		long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		if (STEALING != null) {
+			// 工作窃取队列不支持阻塞放入,短暂挂起后重试
+			while (!STEALING.offer(runnable)) {
+				if (runState != RUNNING) throw new RejectedExecutionException("线程池已关闭");
+				long nanos = deadline - System.nanoTime();
+				if (nanos <= 0) return false;
+				LockSupport.parkNanos(this,Math.min(nanos,TimeUnit.MILLISECONDS.toNanos(1)));
+				if (Thread.interrupted()) throw new InterruptedException();
 			}
+			return true;
 		}
+		if (!TASK_QUEUE.offer(runnable,timeout,timeUnit)) return false;
+		enqueued(runnable);
 		return true;
 	}
 
+	/**
+	 * 放入队列后检查:入队期间线程池被关闭则撤回任务,无工作线程时创建工作线程
+	 * @param runnable 已放入队列任务
+	 */
+	private void enqueued(Runnable runnable) {
+		if (runState != RUNNING && TASK_QUEUE.remove(runnable)) {
+			tryTerminate();
+			throw new RejectedExecutionException("线程池已关闭");
+		}
+		// 核心线程数为0时保证至少一个工作线程
+		if (nowThreadCount.get() == 0) addWorker(null,false);
+	}
+
+	/**
+	 * 取出队列中最早任务
+	 * @return 任务,队列为空返回null
+	 */
+	Runnable pollQueue() {
+		return STEALING != null ? STEALING.poll() : TASK_QUEUE.poll();
+	}
+
+	/**
+	 * 溢出任务放入备用队列后调用:主队列为空时移入主队列,避免工作线程阻塞在主队列上而溢出任务无人执行
+	 */
+	void signalOverflow() {
+		if (!TASK_QUEUE.isEmpty()) return;
+		Runnable runnable = OVERFLOW.poll();
+		if (runnable == null) return;
+		if (TASK_QUEUE.offer(runnable)) {
+			enqueued(runnable);
+			return;
+		}
+		// 主队列已被新任务占满,放回备用队列,备用队列也已满则由提交线程执行
+		if (!OVERFLOW.offer(runnable)) runnable.run();
+	}
+
+	/**
+	 * 主队列取出任务后将一个溢出任务移入主队列,主队列已被新任务占满时由当前工作线程随后执行
+	 * @param worker 当前工作线程
+	 */
+	private void transferOverflow(Worker worker) {
+		if (OVERFLOW == null || worker.firstTask != null) return;
+		Runnable runnable = OVERFLOW.poll();
+		if (runnable != null && !TASK_QUEUE.offer(runnable)) worker.firstTask = runnable;
+	}
+
+	/**
+	 * @return 主队列与备用队列均为空返回true
+	 */
+	private boolean isQueueEmpty() {
+		return TASK_QUEUE.isEmpty() && (OVERFLOW == null || OVERFLOW.isEmpty());
+	}
+
 	/**
 	 * 在未添加任务前启动核心线程空转
 	 * @param coreThreadCount 启用核心线程数
 	 */
 	public void preStartCoreThreads(int coreThreadCount) {
 		if (coreThreadCount > this.coreThreadCount) throw new IllegalArgumentException("超过设置核心线程数");
+		// 工作窃取模式在首次添加任务时启动全部工作线程
+		if (STEALING != null) return;
 		for (int i = 0; i < coreThreadCount; i++) {
-			newCoreThread();
+			if (!addWorker(null,true)) return;
 		}
-		this.coreThreadCount = this.coreThreadCount - coreThreadCount;
 	}
 
 	/**
-	 * 初始化线程池触发值和保存强行关闭线程池时任务数
+	 * 添加任务
+	 * 线程数未达核心线程数时创建核心线程执行任务,否则放入任务队列,队列已满时创建非核心线程,仍无法执行则执行拒绝策略
+	 * @param runnable 任务
+	 * @throws RejectedExecutionException 线程池已关闭
 	 */
-	private int temp = -2;
+	public void execute(Runnable runnable) {
+		if (runnable == null) throw new NullPointerException();
+		// 调用关闭线程池方法后禁止向线程池添加任务
+		if (runState != RUNNING) throw new RejectedExecutionException("线程池已关闭");
+		if (STEALING != null) {
+			if (!STEALING.offer(runnable)) refuseTactics(runnable);
+			return;
+		}
+		if (addWorker(runnable,true)) return;
+		// 备用队列有积压时新任务进入拒绝策略排在其后,保证溢出任务不被饿死
+		if ((OVERFLOW == null || OVERFLOW.isEmpty()) && TASK_QUEUE.offer(runnable)) {
+			enqueued(runnable);
+			return;
+		}
+		if (addWorker(runnable,false)) return;
+		refuseTactics(runnable);
+	}
 
 	/**
-	 * 记录工作核心线程数
+	 * 批量添加任务:先以任务作为首个任务创建核心线程,其余任务按execute()规则依次放入队列,队列已满时创建非核心线程或执行拒绝策略
+	 * 放入前后各做一次关闭检查,工作线程数不超过任务数
+	 * 任务队列为任意BlockingQueue,不支持原子批量放入,逐个放入
+	 * @param runnables 任务集合
+	 * @return 返回全部任务结束后完成的回调对象
+	 * @throws RejectedExecutionException 线程池已关闭
 	 */
-	private AtomicInteger coreTasks = new AtomicInteger(0);
+	@Override
+	public CompletableFuture<Void> executeAll(Collection<? extends Runnable> runnables) {
+		return enqueueAll(Batch.of(runnables)).future().thenApply(list -> null);
+	}
 
 	/**
-	 * 添加任务
-	 * @param runnable 任务
+	 * 批量提交任务
+	 * @param callables 任务集合
+	 * @return 返回全部任务结束后按提交顺序完成的结果集合
+	 * @throws RejectedExecutionException 线程池已关闭
 	 */
-	public void execute(Runnable runnable) {
-		if (runnable == null) return;
-		if (temp == -2) {
-			init();
-			temp = -1;
-		}
-		// 调用关闭线程池方法后禁止向线程池添加任务
-		if (temp != -1) return;
-		// 工作核心线程数 + 1 > 核心线程数将任务放进队列
-		if (coreTasks.get() + 1 > coreThreadCount) {
-			if (isNewNotCoreThread(runnable)) return;
-			try {
-				if (refuseTactics(runnable)) return;
-				TASK_QUEUE.put(runnable);
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
+	@Override
+	public <T> CompletableFuture<List<T>> submitAll(Collection<? extends Callable<T>> callables) {
+		return enqueueAll(new Batch<>(callables)).future();
+	}
+
+	/**
+	 * 放入一批任务
+	 * @param batch 一批任务
+	 * @return 返回该批任务
+	 */
+	private <T> Batch<T> enqueueAll(Batch<T> batch) {
+		if (runState != RUNNING) throw new RejectedExecutionException("线程池已关闭");
+		List<? extends Runnable> tasks = batch.tasks();
+		int i = 0;
+		try {
+			if (STEALING != null) {
+				for (i = STEALING.offerAll(tasks); i < tasks.size(); i++) {
+					refuseTactics(tasks.get(i));
+				}
+				return batch;
+			}
+			// 空闲线程已在队列上等待时不再创建核心线程
+			int idle = WORKERS.size() - activeCount();
+			int limit = tasks.size() - Math.max(0,idle);
+			while (i < limit && addWorker(tasks.get(i),true)) {
+				i++;
+			}
+			for (; i < tasks.size(); i++) {
+				Runnable task = tasks.get(i);
+				// 与execute()相同:备用队列有积压时新任务进入拒绝策略排在其后
+				if ((OVERFLOW == null || OVERFLOW.isEmpty()) && TASK_QUEUE.offer(task) || addWorker(task,false)) continue;
+				refuseTactics(task);
 			}
+		} catch (RuntimeException e) {
+			// 拒绝策略抛出异常时未放入任务以该异常结束
+			batch.fail(i,e);
+		}
+		enqueuedAll(batch);
+		return batch;
+	}
+
+	/**
+	 * 一批任务放入队列后检查:与enqueued()相同,入队期间线程池被关闭则撤回仍在队列中的任务,无工作线程时创建工作线程
+	 * @param batch 一批任务
+	 */
+	private void enqueuedAll(Batch<?> batch) {
+		if (runState == RUNNING) {
+			// 核心线程数为0时保证至少一个工作线程
+			if (nowThreadCount.get() == 0) addWorker(null,false);
 			return;
 		}
-		coreThreadRunnable = runnable;
+		boolean removed = false;
+		for (Runnable task : batch.tasks()) {
+			if (!TASK_QUEUE.remove(task)) continue;
+			batch.fail(task,new RejectedExecutionException("线程池已关闭"));
+			removed = true;
+		}
+		if (removed) tryTerminate();
+	}
+
+	/**
+	 * @return 返回正在执行任务的工作线程数
+	 */
+	private int activeCount() {
+		int count = 0;
+		for (Worker worker : WORKERS) {
+			if (worker.isLocked()) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 添加优先级任务:任务队列为PriorityTaskQueue时按优先级领取
+	 * @param runnable 任务
+	 * @param priority 优先级:数值越大越优先
+	 */
+	public void execute(Runnable runnable, int priority) {
+		execute(new PriorityTask(runnable,priority));
+	}
+
+	/**
+	 * 添加带截止时间的优先级任务:超过截止时间仍未开始执行则丢弃
+	 * @param runnable 任务
+	 * @param priority 优先级:数值越大越优先
+	 * @param timeout 从现在起多长时间内未开始执行则丢弃
+	 * @param timeUnit 时间单位
+	 */
+	public void execute(Runnable runnable, int priority, long timeout, TimeUnit timeUnit) {
+		execute(new PriorityTask(runnable,priority,timeout,timeUnit));
+	}
+
+	/**
+	 * 提交带截止时间的优先级任务:超过截止时间仍未开始执行则丢弃并取消
+	 * @param callable 任务
+	 * @param priority 优先级:数值越大越优先
+	 * @param timeout 从现在起多长时间内未开始执行则丢弃
+	 * @param timeUnit 时间单位
+	 * @return 返回任务结果,被丢弃时get()抛出CancellationException
+	 */
+	public <T> Future<T> submit(Callable<T> callable, int priority, long timeout, TimeUnit timeUnit) {
+		RunnableFuture<T> future = newTaskFor(callable);
+		execute(future,priority,timeout,timeUnit);
+		return future;
+	}
+
+	/**
+	 * 超过截止时间被丢弃任务数
+	 */
+	private final LongAdder DROPPED = new LongAdder();
+
+	/**
+	 * @return 返回超过截止时间被丢弃任务数
+	 */
+	public long getDroppedTasks() {
+		return DROPPED.sum();
 	}
 
 	/**
 	 * 执行完所有添加任务后关闭线程池
 	 */
 	public void shutdown() {
-		// 记录关闭线程池时任务数
-		temp = TASK_QUEUE.size();
-		while (true) {
-		    if (nowThreadCount.get() == coreThreadCount && TASK_QUEUE.size() == 0) break;
+		if (runState < SHUTDOWN) runState = SHUTDOWN;
+		if (STEALING != null) {
+			// 工作线程未启动直接终止,否则由最后结束的工作线程终止
+			if (!STEALING.shutdown()) tryTerminate();
+			return;
 		}
-		shutdownNow();
+		// 唤醒空闲线程检查队列,队列为空则结束
+		interruptIdleWorkers();
+		// 未创建过工作线程直接终止
+		tryTerminate();
 	}
 
 	/**
-	 * 关闭线程池线程触发值
+	 * 中断未执行任务的空闲线程,使其重新检查运行状态与线程数
 	 */
-	private boolean shutdown = true;
+	private void interruptIdleWorkers() {
+		for (Worker worker : WORKERS) {
+			if (worker.thread.isInterrupted() || !worker.tryLock()) continue;
+			try {
+				worker.thread.interrupt();
+			} finally {
+				worker.unlock();
+			}
+		}
+	}
 
 	/**
-	 * @return 执行shutdown()或shutdownNow()完全终止则返回true
+	 * 调整核心线程数:队列积压时立即补充工作线程,多余工作线程空闲存活时间后结束
+	 * @param target 目标线程数
 	 */
-	public boolean isShutdown() {
-		return !shutdown;
+	void resize(int target) {
+		int old = coreThreadCount;
+		coreThreadCount = target;
+		if (target < old) {
+			interruptIdleWorkers();
+			return;
+		}
+		for (int backlog = TASK_QUEUE.size(); backlog > 0 && nowThreadCount.get() < target; backlog--) {
+			if (!addWorker(null,true)) return;
+		}
 	}
 
 	/**
-	 * @return 执行shutdown()或shutdownNow()但未完全终止则返回true
+	 * @return 返回队列中任务数
 	 */
-	@Override
-	public boolean isTerminated() {
-		return shutdown;
+	int queueSize() {
+		return STEALING != null ? STEALING.size() : TASK_QUEUE.size();
 	}
 
-	private List<Runnable> list = new ArrayList<>();
+	/**
+	 * @return 返回自适应线程数调整指标,未开启自适应线程数返回null
+	 */
+	public AdaptiveMetrics getAdaptiveMetrics() {
+		return SIZER == null ? null : SIZER.snapshot(nowThreadCount.get());
+	}
 
 	/**
-	 * 强行关闭线程池
-	 * @return 返回未执行任务集合
+	 * @return 执行shutdown()或shutdownNow()后返回true
 	 */
-	public List<Runnable> shutdownNow() {
-		// 记录关闭线程池时任务数
-		temp = TASK_QUEUE.size();
-		this.shutdown = false;
-		for (int i = 0; i < TASK_QUEUE.size(); i++) {
-			list.add(TASK_QUEUE.poll());
-		}
-		return list;
+	public boolean isShutdown() {
+		return runState >= SHUTDOWN;
 	}
 
 	/**
-	 * 创建核心线程
+	 * @return 关闭后所有工作线程已结束返回true
 	 */
-	private void newCoreThread() {
-		new Thread(this::coreThreadRun, String.valueOf(nowThreadCount.incrementAndGet())).start();
+	@Override
+	public boolean isTerminated() {
+		return TERMINATION.getCount() == 0;
 	}
 
 	/**
-	 * 创建非核心线程
+	 * 尝试终止:关闭后无工作线程且无待执行任务时释放终止信号
+	 * 关闭后队列仍有任务但工作线程已全部结束时补充工作线程
 	 */
-	private void newNotCoreThread() {
-		new Thread(this::notCoreThreadRun, String.valueOf(nowThreadCount.incrementAndGet())).start();
+	private void tryTerminate() {
+		int state = runState;
+		if (state == RUNNING || nowThreadCount.get() > 0) return;
+		// 工作窃取模式工作线程仅在队列为空或强行关闭时结束
+		if (STEALING == null && state == SHUTDOWN && !isQueueEmpty()) {
+			addWorker(null,false);
+			return;
+		}
+		TERMINATION.countDown();
+	}
+
+	/**
+	 * 强行关闭线程池
+	 * @return 返回未执行任务集合
+	 */
+	public List<Runnable> shutdownNow() {
+		runState = STOP;
+		if (STEALING != null) {
+			// 先关闭以禁止工作线程启动
+			boolean started = STEALING.shutdown();
+			List<Runnable> list = STEALING.shutdownNow();
+			if (!started) tryTerminate();
+			return list;
+		}
+		for (Worker worker : WORKERS) {
+			worker.thread.interrupt();
+		}
+		List<Runnable> list = new ArrayList<>();
+		TASK_QUEUE.drainTo(list);
+		if (OVERFLOW != null) OVERFLOW.drainTo(list);
+		tryTerminate();
+		return list;
 	}
 
 	/**
@@ -282,97 +677,116 @@ public class CustomThreadPool extends AbstractExecutorService {
 	}
 
 	/**
-	 * 核心任务
+	 * 工作线程工作方法:先执行自带任务,再从任务队列领取任务,领取不到任务时结束
+	 * @param worker 工作线程
 	 */
-	private Runnable coreThreadRunnable;
-
-	/**
-	 * 核心线程工作方法
-	 */
-	private void coreThreadRun() {
-		while (shutdown) {
-			// 判断核心线程获取任务执行方式
-			if (TASK_QUEUE.size() == 0) {
-				if (coreThreadRunnable == null) continue;
-				// 代表一个核心线程工作
-				coreTasks.incrementAndGet();
+	private void runWorker(Worker worker) {
+		Runnable task = worker.firstTask;
+		worker.firstTask = null;
+		boolean completedAbruptly = true;
+		try {
+			while (task != null || (task = getTask(worker)) != null) {
+				worker.lock();
 				try {
-					coreThreadRunnable.run();
-					coreThreadRunnable = null;
-				} catch (Exception e) {
-					// 代表一个核心线程工作结束
-					coreTasks.decrementAndGet();
-					continue;
+					// 强行关闭时保持中断标记,否则清除关闭空闲线程时遗留的中断标记
+					if (runState >= STOP) worker.thread.interrupt();
+					else Thread.interrupted();
+					runTask(task);
+				} finally {
+					// 领取任务时可能已带出一个溢出任务
+					task = worker.firstTask;
+					worker.firstTask = null;
+					worker.unlock();
 				}
-				// 代表一个核心线程工作结束
-				coreTasks.decrementAndGet();
-				tasks.incrementAndGet();
-				continue;
 			}
-			coreThreadRunnable = TASK_QUEUE.poll();
-			if (coreThreadRunnable == null) continue;
-			try {
-				coreThreadRunnable.run();
-				coreThreadRunnable = null;
-			} catch (Exception e) {
-				continue;
+			completedAbruptly = false;
+		} finally {
+			WORKERS.remove(worker);
+			// getTask()返回null前已扣减线程数
+			if (completedAbruptly) {
+				nowThreadCount.decrementAndGet();
+				// 线程因Error结束时补充工作线程
+				if (runState == RUNNING && !isQueueEmpty()) addWorker(null,false);
 			}
-			tasks.incrementAndGet();
+			tryTerminate();
 		}
 	}
 
 	/**
-	 * 非核心任务
-	 */
-	private Runnable notCoreThreadRunnable;
-
-	/**
-	 * 非核心线程工作方法
+	 * 执行任务并记录执行任务数
+	 * @param task 任务
 	 */
-	private void notCoreThreadRun() {
-		while (!nullThread() || shutdown) {
-			if (notCoreThreadRunnable == null) continue;
-			try {
-				notCoreThreadRunnable.run();
-				notCoreThreadRunnable = null;
-			} catch (Exception e) {
-				continue;
-			}
+	private void runTask(Runnable task) {
+		// 超过截止时间的任务不再执行
+		if (task instanceof PriorityTask && ((PriorityTask) task).isExpired()) {
+			DROPPED.increment();
+			((PriorityTask) task).drop();
+			return;
+		}
+		long start = SIZER == null ? 0L : System.nanoTime();
+		long cpuStart = SIZER == null ? 0L : SIZER.cpuTime();
+		try {
+			task.run();
 			tasks.incrementAndGet();
+		} catch (Exception e) {
+			// 任务异常不影响工作线程
+		} finally {
+			if (SIZER != null) SIZER.record(start,cpuStart);
 		}
 	}
 
 	/**
-	 * 判断是否要销毁空闲的非核心线程
-	 * 锁用来锁住线程销毁,避免销毁的线程超出预期
-	 * @return 布尔值
+	 * 领取任务:核心线程在队列上阻塞等待,非核心线程最多等待空闲存活时间
+	 * 使用溢出策略时每取出一个主队列任务移入一个溢出任务,主队列为空时直接领取溢出任务
+	 * @param worker 当前工作线程
+	 * @return 任务,返回null时已扣减线程数,工作线程结束
 	 */
-	 private synchronized boolean nullThread() {
-		if (coreThreadRunnable == null && notCoreThreadRunnable == null && nowThreadCount.get() > coreThreadCount) {
+	private Runnable getTask(Worker worker) {
+		boolean timedOut = false;
+		while (true) {
+			int state = runState;
+			if (state >= STOP || state == SHUTDOWN && isQueueEmpty()) {
+				nowThreadCount.decrementAndGet();
+				return null;
+			}
+			int count = nowThreadCount.get();
+			boolean timed = count > coreThreadCount;
+			// 空闲超时的非核心线程自杀,队列中仍有任务时至少保留一个线程
+			if (timed && timedOut && (count > 1 || isQueueEmpty())) {
+				if (nowThreadCount.compareAndSet(count,count - 1)) return null;
+				continue;
+			}
+			if (OVERFLOW != null) {
+				Runnable runnable = TASK_QUEUE.poll();
+				if (runnable != null) {
+					transferOverflow(worker);
+					return runnable;
+				}
+				if ((runnable = OVERFLOW.poll()) != null) return runnable;
+			}
 			try {
-				// 阻塞一段时间后是否无任务再销毁
-				awaitTermination(time * 60,timeUnit);
+				Runnable runnable = timed ? TASK_QUEUE.poll(time,timeUnit) : TASK_QUEUE.take();
+				if (runnable != null) {
+					transferOverflow(worker);
+					return runnable;
+				}
+				timedOut = true;
 			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
+				// 关闭线程池唤醒,重新检查状态
+				timedOut = false;
 			}
-			if (TASK_QUEUE.size() != 0) return false;
 		}
-		System.out.println("销毁非核心线程:线程ID:" + Thread.currentThread().getName());
-		// 更新当前线程数记录值:-1返回新值
-		nowThreadCount.decrementAndGet();
-		return true;
 	}
 
 	/**
-	 * 阻塞线程
+	 * 阻塞等待线程池终止:终止后立即返回
 	 * @param timeout the maximum time to wait
 	 * @param unit the time unit of the timeout argument
-	 * @return 布尔值
+	 * @return 超时前终止返回true
 	 * @throws InterruptedException
 	 */
 	@Override
 	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-		unit.sleep(timeout);
-		return true;
+		return TERMINATION.await(timeout,unit);
 	}
-}
\ No newline at end of file
+}
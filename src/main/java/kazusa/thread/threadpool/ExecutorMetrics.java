@@ -0,0 +1,132 @@
+package kazusa.thread.threadpool;
+
+import kazusa.common.metrics.Histogram;
+
+/**
+ * 线程池指标快照,耗时单位均为纳秒
+ * @author kazusa
+ * @version 1.0.0
+ * @see InstrumentedExecutorService#getExecutorMetrics()
+ */
+public class ExecutorMetrics {
+
+	/**
+	 * 线程池名
+	 */
+	private final String name;
+
+	/**
+	 * 提交任务数
+	 */
+	private final long submitted;
+
+	/**
+	 * 执行结束任务数:含执行异常任务
+	 */
+	private final long completed;
+
+	/**
+	 * 执行异常任务数
+	 */
+	private final long failed;
+
+	/**
+	 * 被拒绝任务数
+	 */
+	private final long rejected;
+
+	/**
+	 * 执行中任务数
+	 */
+	private final int active;
+
+	/**
+	 * 等待执行任务数
+	 */
+	private final long queued;
+
+	/**
+	 * 吞吐量:每秒执行结束任务数
+	 */
+	private final double throughput;
+
+	/**
+	 * 任务提交至开始执行等待时长
+	 */
+	private final Histogram.Snapshot queueWait;
+
+	/**
+	 * 任务执行耗时
+	 */
+	private final Histogram.Snapshot execution;
+
+	ExecutorMetrics(String name, long submitted, long completed, long failed, long rejected, int active, long queued, double throughput,
+					Histogram.Snapshot queueWait, Histogram.Snapshot execution) {
+		this.name = name;
+		this.submitted = submitted;
+		this.completed = completed;
+		this.failed = failed;
+		this.rejected = rejected;
+		this.active = active;
+		this.queued = queued;
+		this.throughput = throughput;
+		this.queueWait = queueWait;
+		this.execution = execution;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	public long getCompleted() {
+		return completed;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public int getActive() {
+		return active;
+	}
+
+	public long getQueued() {
+		return queued;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public Histogram.Snapshot getQueueWait() {
+		return queueWait;
+	}
+
+	public Histogram.Snapshot getExecution() {
+		return execution;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutorMetrics{" +
+				"name=" + name +
+				", submitted=" + submitted +
+				", completed=" + completed +
+				", failed=" + failed +
+				", rejected=" + rejected +
+				", active=" + active +
+				", queued=" + queued +
+				", throughput=" + String.format("%.1f",throughput) +
+				", queueWait=[" + queueWait +
+				"], execution=[" + execution +
+				"]}";
+	}
+}
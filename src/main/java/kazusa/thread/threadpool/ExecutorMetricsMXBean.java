@@ -0,0 +1,36 @@
+package kazusa.thread.threadpool;
+
+/**
+ * 线程池JMX监控接口,耗时单位均为纳秒
+ * @author kazusa
+ * @version 1.0.0
+ * @see InstrumentedExecutorService#registerMBean()
+ */
+public interface ExecutorMetricsMXBean {
+
+	long getSubmitted();
+
+	long getCompleted();
+
+	long getFailed();
+
+	long getRejected();
+
+	int getActive();
+
+	long getQueued();
+
+	double getThroughput();
+
+	long getQueueWaitMean();
+
+	long getQueueWaitP99();
+
+	long getQueueWaitMax();
+
+	long getExecutionMean();
+
+	long getExecutionP99();
+
+	long getExecutionMax();
+}
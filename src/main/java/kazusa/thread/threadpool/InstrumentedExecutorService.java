@@ -0,0 +1,251 @@
+package kazusa.thread.threadpool;
+
+import kazusa.common.metrics.Histogram;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程池监控:包装任意线程池,记录任务排队等待时长,执行耗时,拒绝数与吞吐量
+ * 记录全程无锁,通过getExecutorMetrics()或JMX读取
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService {
+
+	/**
+	 * 吞吐量采样周期:1秒
+	 */
+	private static final long THROUGHPUT_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+	private final String NAME;
+
+	private final ExecutorService EXECUTOR;
+
+	/**
+	 * 任务提交至开始执行等待时长
+	 */
+	private final Histogram QUEUE_WAIT = new Histogram();
+
+	/**
+	 * 任务执行耗时
+	 */
+	private final Histogram EXECUTION = new Histogram();
+
+	private final LongAdder SUBMITTED = new LongAdder();
+
+	private final LongAdder STARTED = new LongAdder();
+
+	private final LongAdder COMPLETED = new LongAdder();
+
+	private final LongAdder FAILED = new LongAdder();
+
+	private final LongAdder REJECTED = new LongAdder();
+
+	private final AtomicInteger ACTIVE = new AtomicInteger(0);
+
+	// 吞吐量采样状态
+	private long lastTime = System.nanoTime();
+
+	private long lastCompleted;
+
+	private double throughput;
+
+	/**
+	 * @param name 线程池名
+	 * @param executorService 被监控线程池
+	 */
+	public InstrumentedExecutorService(String name, ExecutorService executorService) {
+		if (executorService == null) throw new NullPointerException();
+		NAME = name;
+		EXECUTOR = executorService;
+	}
+
+	/**
+	 * 计时任务:记录排队等待时长与执行耗时
+	 */
+	private final class TimedTask implements Runnable {
+
+		private final Runnable task;
+
+		private final long submitTime = System.nanoTime();
+
+		private TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			QUEUE_WAIT.record(start - submitTime);
+			STARTED.increment();
+			ACTIVE.incrementAndGet();
+			try {
+				task.run();
+			} catch (RuntimeException | Error e) {
+				FAILED.increment();
+				throw e;
+			} finally {
+				ACTIVE.decrementAndGet();
+				EXECUTION.record(System.nanoTime() - start);
+				COMPLETED.increment();
+			}
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (command == null) throw new NullPointerException();
+		SUBMITTED.increment();
+		try {
+			Runnable task = new TimedTask(command);
+			// 保留优先级与截止时间
+			if (command instanceof PriorityTask) task = ((PriorityTask) command).withTask(task);
+			EXECUTOR.execute(task);
+		} catch (RejectedExecutionException e) {
+			REJECTED.increment();
+			throw e;
+		}
+	}
+
+	/**
+	 * submit()提交任务异常由FutureTask捕获,在此记录执行异常
+	 */
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		return new FutureTask<T>(callable) {
+			@Override
+			protected void setException(Throwable t) {
+				FAILED.increment();
+				super.setException(t);
+			}
+		};
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		return new FutureTask<T>(runnable,value) {
+			@Override
+			protected void setException(Throwable t) {
+				FAILED.increment();
+				super.setException(t);
+			}
+		};
+	}
+
+	/**
+	 * @return 返回被监控线程池
+	 */
+	public ExecutorService getExecutorService() {
+		return EXECUTOR;
+	}
+
+	/**
+	 * @return 返回吞吐量:每秒执行结束任务数,至多每秒重新采样一次
+	 */
+	private synchronized double throughput() {
+		long now = System.nanoTime();
+		long elapsed = now - lastTime;
+		if (elapsed >= THROUGHPUT_PERIOD) {
+			long completed = COMPLETED.sum();
+			throughput = (completed - lastCompleted) * 1e9 / elapsed;
+			lastTime = now;
+			lastCompleted = completed;
+		}
+		return throughput;
+	}
+
+	/**
+	 * @return 返回等待执行任务数
+	 */
+	private long queued() {
+		return Math.max(0,SUBMITTED.sum() - REJECTED.sum() - STARTED.sum());
+	}
+
+	/**
+	 * @return 返回线程池指标快照
+	 */
+	public ExecutorMetrics getExecutorMetrics() {
+		return new ExecutorMetrics(
+			NAME,
+			SUBMITTED.sum(),
+			COMPLETED.sum(),
+			FAILED.sum(),
+			REJECTED.sum(),
+			ACTIVE.get(),
+			queued(),
+			throughput(),
+			QUEUE_WAIT.snapshot(),
+			EXECUTION.snapshot()
+		);
+	}
+
+	/**
+	 * 注册JMX监控:kazusa.threadpool:type=被监控线程池类名,name=线程池名
+	 * @return 返回注册对象名,用于注销
+	 * @throws Exception
+	 */
+	public ObjectName registerMBean() throws Exception {
+		ObjectName objectName = new ObjectName("kazusa.threadpool:type=" + EXECUTOR.getClass().getSimpleName() + ",name=" + ObjectName.quote(NAME));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new ExecutorMetricsMXBean() {
+			public long getSubmitted() {return SUBMITTED.sum();}
+			public long getCompleted() {return COMPLETED.sum();}
+			public long getFailed() {return FAILED.sum();}
+			public long getRejected() {return REJECTED.sum();}
+			public int getActive() {return ACTIVE.get();}
+			public long getQueued() {return queued();}
+			public double getThroughput() {return throughput();}
+			public long getQueueWaitMean() {return QUEUE_WAIT.snapshot().getMean();}
+			public long getQueueWaitP99() {return QUEUE_WAIT.snapshot().getP99();}
+			public long getQueueWaitMax() {return QUEUE_WAIT.snapshot().getMax();}
+			public long getExecutionMean() {return EXECUTION.snapshot().getMean();}
+			public long getExecutionP99() {return EXECUTION.snapshot().getP99();}
+			public long getExecutionMax() {return EXECUTION.snapshot().getMax();}
+		},objectName);
+		return objectName;
+	}
+
+	@Override
+	public void shutdown() {
+		EXECUTOR.shutdown();
+	}
+
+	/**
+	 * @return 返回未执行任务集合:已还原为提交时任务
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> list = new ArrayList<>();
+		for (Runnable runnable : EXECUTOR.shutdownNow()) {
+			if (runnable instanceof PriorityTask && ((PriorityTask) runnable).getTask() instanceof TimedTask) runnable = ((PriorityTask) runnable).getTask();
+			list.add(runnable instanceof TimedTask ? ((TimedTask) runnable).task : runnable);
+		}
+		return list;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return EXECUTOR.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return EXECUTOR.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return EXECUTOR.awaitTermination(timeout,unit);
+	}
+}
@@ -0,0 +1,74 @@
+package kazusa.thread.threadpool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 命名线程工厂:线程名为 名称-序号
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+	private final String name;
+
+	private final boolean daemon;
+
+	private final AtomicInteger count = new AtomicInteger(0);
+
+	/**
+	 * @param name 线程名前缀
+	 * @param daemon 是否为守护线程
+	 */
+	public NamedThreadFactory(String name, boolean daemon) {
+		this.name = name;
+		this.daemon = daemon;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r,name + "-" + count.incrementAndGet());
+		thread.setDaemon(daemon);
+		return thread;
+	}
+
+	/**
+	 * JDK21虚拟线程工厂,项目按JDK11编译故通过反射获取
+	 */
+	private static final Method VIRTUAL_FACTORY = virtualFactory();
+
+	private static Method virtualFactory() {
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			// JDK19/20未开启预览特性时抛出UnsupportedOperationException
+			Object ofVirtual = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder.getMethod("factory").invoke(ofVirtual);
+			return builder.getMethod("name",String.class,long.class);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return 当前JDK支持虚拟线程返回true
+	 */
+	public static boolean isVirtualSupported() {
+		return VIRTUAL_FACTORY != null;
+	}
+
+	/**
+	 * 虚拟线程工厂:不支持虚拟线程时退化为命名守护平台线程工厂
+	 * @param name 线程名前缀
+	 * @return 线程工厂
+	 */
+	public static ThreadFactory ofVirtual(String name) {
+		if (VIRTUAL_FACTORY == null) return new NamedThreadFactory(name,true);
+		try {
+			Object builder = VIRTUAL_FACTORY.invoke(Thread.class.getMethod("ofVirtual").invoke(null),name + "-",1L);
+			return (ThreadFactory) VIRTUAL_FACTORY.getDeclaringClass().getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			return new NamedThreadFactory(name,true);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package kazusa.thread.threadpool;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带优先级与截止时间的任务
+ * 配合PriorityTaskQueue按优先级领取,超过截止时间仍未开始执行的任务由自定义线程池丢弃
+ * @author kazusa
+ * @version 1.0.0
+ * @see PriorityTaskQueue
+ */
+public class PriorityTask implements Runnable {
+
+	/**
+	 * 无截止时间
+	 */
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	private final Runnable task;
+
+	/**
+	 * 优先级:数值越大越优先
+	 */
+	private final int priority;
+
+	/**
+	 * 截止时间:纳秒
+	 */
+	private final long deadline;
+
+	/**
+	 * @param task 任务
+	 * @param priority 优先级:数值越大越优先
+	 */
+	public PriorityTask(Runnable task, int priority) {
+		this(task,priority,NO_DEADLINE);
+	}
+
+	/**
+	 * @param task 任务
+	 * @param priority 优先级:数值越大越优先
+	 * @param timeout 从现在起多长时间内未开始执行则丢弃
+	 * @param timeUnit 时间单位
+	 */
+	public PriorityTask(Runnable task, int priority, long timeout, TimeUnit timeUnit) {
+		this(task,priority,System.nanoTime() + timeUnit.toNanos(timeout));
+	}
+
+	private PriorityTask(Runnable task, int priority, long deadline) {
+		if (task == null) throw new NullPointerException();
+		this.task = task;
+		this.priority = priority;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * 替换任务,保留优先级与截止时间
+	 * @param task 任务
+	 * @return 新任务
+	 */
+	PriorityTask withTask(Runnable task) {
+		return new PriorityTask(task,priority,deadline);
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return 已超过截止时间返回true
+	 */
+	public boolean isExpired() {
+		return deadline != NO_DEADLINE && System.nanoTime() - deadline > 0;
+	}
+
+	/**
+	 * 丢弃任务:submit()提交的任务取消,避免get()永久阻塞
+	 */
+	void drop() {
+		if (task instanceof Future) ((Future<?>) task).cancel(false);
+	}
+
+	@Override
+	public void run() {
+		task.run();
+	}
+}
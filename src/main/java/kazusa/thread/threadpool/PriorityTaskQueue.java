@@ -0,0 +1,301 @@
+package kazusa.thread.threadpool;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界优先级任务队列:按优先级领取任务,等待时间越长优先级越高,低优先级任务不会被饿死
+ * 有效优先级 = 优先级 + 等待时间 / 老化时间,PriorityTask以外的任务优先级为0
+ * 同一优先级任务先进先出,队首即该优先级有效优先级最高任务,领取时只需比较各优先级队首
+ * 用法:new CustomThreadPool(new ThreadPool(核心线程数,最大线程数,new PriorityTaskQueue(队列长度)))
+ * @author kazusa
+ * @version 1.0.0
+ * @see PriorityTask
+ */
+public class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private final int CAPACITY;
+
+	/**
+	 * 老化时间:纳秒,每等待一个老化时间优先级提升1
+	 */
+	private final long AGING;
+
+	/**
+	 * 各优先级先进先出队列
+	 */
+	private final TreeMap<Integer,ArrayDeque<Node>> LEVELS = new TreeMap<>();
+
+	private final ReentrantLock LOCK = new ReentrantLock();
+
+	private final Condition NOT_EMPTY = LOCK.newCondition();
+
+	private final Condition NOT_FULL = LOCK.newCondition();
+
+	private int size;
+
+	/**
+	 * 队列节点:记录入队时间
+	 */
+	private static final class Node {
+
+		private final Runnable task;
+
+		private final long enqueueTime = System.nanoTime();
+
+		private Node(Runnable task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * @param capacity 队列长度,老化时间1秒
+	 */
+	public PriorityTaskQueue(int capacity) {
+		this(capacity,1,TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param capacity 队列长度
+	 * @param agingTime 老化时间:每等待多长时间优先级提升1
+	 * @param timeUnit 老化时间单位
+	 */
+	public PriorityTaskQueue(int capacity, long agingTime, TimeUnit timeUnit) {
+		if (capacity <= 0 || agingTime <= 0) throw new IllegalArgumentException("队列长度与老化时间需大于0");
+		CAPACITY = capacity;
+		AGING = timeUnit.toNanos(agingTime);
+	}
+
+	private static int priority(Runnable task) {
+		return task instanceof PriorityTask ? ((PriorityTask) task).getPriority() : 0;
+	}
+
+	private void enqueue(Runnable task) {
+		LEVELS.computeIfAbsent(priority(task),k -> new ArrayDeque<>()).addLast(new Node(task));
+		size++;
+		NOT_EMPTY.signal();
+	}
+
+	/**
+	 * @return 返回有效优先级最高任务所在优先级:有效优先级相同时取等待最久的任务
+	 */
+	private Map.Entry<Integer,ArrayDeque<Node>> best() {
+		long now = System.nanoTime();
+		Map.Entry<Integer,ArrayDeque<Node>> best = null;
+		double bestPriority = 0;
+		// 从高优先级开始比较,低优先级需老化足够久才能胜出
+		for (Map.Entry<Integer,ArrayDeque<Node>> level : LEVELS.descendingMap().entrySet()) {
+			Node head = level.getValue().peekFirst();
+			double priority = level.getKey() + (now - head.enqueueTime) / (double) AGING;
+			if (best == null || priority > bestPriority
+					|| priority == bestPriority && head.enqueueTime - best.getValue().peekFirst().enqueueTime < 0) {
+				best = level;
+				bestPriority = priority;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * 取出有效优先级最高的任务
+	 */
+	private Runnable dequeue() {
+		Map.Entry<Integer,ArrayDeque<Node>> best = best();
+		Node node = best.getValue().pollFirst();
+		if (best.getValue().isEmpty()) LEVELS.remove(best.getKey());
+		size--;
+		NOT_FULL.signal();
+		return node.task;
+	}
+
+	@Override
+	public boolean offer(Runnable runnable) {
+		if (runnable == null) throw new NullPointerException();
+		LOCK.lock();
+		try {
+			if (size >= CAPACITY) return false;
+			enqueue(runnable);
+			return true;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+		if (runnable == null) throw new NullPointerException();
+		long nanos = unit.toNanos(timeout);
+		LOCK.lockInterruptibly();
+		try {
+			while (size >= CAPACITY) {
+				if (nanos <= 0) return false;
+				nanos = NOT_FULL.awaitNanos(nanos);
+			}
+			enqueue(runnable);
+			return true;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public void put(Runnable runnable) throws InterruptedException {
+		if (runnable == null) throw new NullPointerException();
+		LOCK.lockInterruptibly();
+		try {
+			while (size >= CAPACITY) {
+				NOT_FULL.await();
+			}
+			enqueue(runnable);
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		LOCK.lockInterruptibly();
+		try {
+			while (size == 0) {
+				NOT_EMPTY.await();
+			}
+			return dequeue();
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		LOCK.lockInterruptibly();
+		try {
+			while (size == 0) {
+				if (nanos <= 0) return null;
+				nanos = NOT_EMPTY.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll() {
+		LOCK.lock();
+		try {
+			return size == 0 ? null : dequeue();
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * @return 返回当前有效优先级最高的任务,不取出
+	 */
+	@Override
+	public Runnable peek() {
+		LOCK.lock();
+		try {
+			return size == 0 ? null : best().getValue().peekFirst().task;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (o == null) return false;
+		LOCK.lock();
+		try {
+			Iterator<Map.Entry<Integer,ArrayDeque<Node>>> levels = LEVELS.entrySet().iterator();
+			while (levels.hasNext()) {
+				ArrayDeque<Node> deque = levels.next().getValue();
+				Iterator<Node> nodes = deque.iterator();
+				while (nodes.hasNext()) {
+					if (!o.equals(nodes.next().task)) continue;
+					nodes.remove();
+					if (deque.isEmpty()) levels.remove();
+					size--;
+					NOT_FULL.signal();
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		LOCK.lock();
+		try {
+			return size;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		LOCK.lock();
+		try {
+			return CAPACITY - size;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c,Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		if (c == this) throw new IllegalArgumentException();
+		LOCK.lock();
+		try {
+			int n = 0;
+			while (n < maxElements && size > 0) {
+				c.add(dequeue());
+				n++;
+			}
+			if (n > 0) NOT_FULL.signalAll();
+			return n;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * @return 返回队列快照迭代器,按优先级从高到低,不支持remove
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		LOCK.lock();
+		try {
+			List<Runnable> list = new ArrayList<>(size);
+			for (ArrayDeque<Node> deque : LEVELS.descendingMap().values()) {
+				for (Node node : deque) {
+					list.add(node.task);
+				}
+			}
+			return Collections.unmodifiableList(list).iterator();
+		} finally {
+			LOCK.unlock();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package kazusa.thread.threadpool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 自定义线程池拒绝策略:线程数已达上限且队列已满时调用
+ * @author kazusa
+ * @version 1.0.0
+ * @see CustomThreadPool
+ */
+@FunctionalInterface
+public interface RejectionPolicy {
+
+	/**
+	 * @param runnable 被拒绝任务
+	 * @param pool 线程池
+	 * @throws RejectedExecutionException 放弃执行任务
+	 */
+	void rejected(Runnable runnable, CustomThreadPool pool);
+
+	/**
+	 * 取消被丢弃任务:submit()提交的任务取消,避免get()永久阻塞
+	 * @param runnable 被丢弃任务
+	 */
+	private static void cancel(Runnable runnable) {
+		if (runnable instanceof Future) ((Future<?>) runnable).cancel(false);
+	}
+
+	/**
+	 * 抛出RejectedExecutionException
+	 */
+	class Abort implements RejectionPolicy {
+
+		@Override
+		public void rejected(Runnable runnable, CustomThreadPool pool) {
+			throw new RejectedExecutionException("线程池超载");
+		}
+	}
+
+	/**
+	 * 阻塞提交线程等待队列空位,超时抛出RejectedExecutionException
+	 * 生产速度超过消费速度时提交线程随之减速
+	 */
+	class Block implements RejectionPolicy {
+
+		private final long timeout;
+
+		private final TimeUnit timeUnit;
+
+		/**
+		 * @param timeout 最长等待时间
+		 * @param timeUnit 等待时间单位
+		 */
+		public Block(long timeout, TimeUnit timeUnit) {
+			this.timeout = timeout;
+			this.timeUnit = timeUnit;
+		}
+
+		@Override
+		public void rejected(Runnable runnable, CustomThreadPool pool) {
+			try {
+				if (!pool.offerQueue(runnable,timeout,timeUnit)) throw new RejectedExecutionException("线程池超载:等待队列空位超时");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("线程池超载:等待队列空位被中断",e);
+			}
+		}
+	}
+
+	/**
+	 * 由提交线程执行任务,提交线程执行期间无法继续提交
+	 * 任务内再次提交被拒绝时嵌套执行,超过嵌套深度交由后备策略处理,避免栈溢出
+	 */
+	class CallerRuns implements RejectionPolicy {
+
+		private final int maxDepth;
+
+		private final RejectionPolicy fallback;
+
+		/**
+		 * 当前线程嵌套执行深度
+		 */
+		private final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+		/**
+		 * @param maxDepth 最大嵌套深度,超过抛出RejectedExecutionException
+		 */
+		public CallerRuns(int maxDepth) {
+			this(maxDepth,new Abort());
+		}
+
+		/**
+		 * @param maxDepth 最大嵌套深度
+		 * @param fallback 超过最大嵌套深度时的后备策略
+		 */
+		public CallerRuns(int maxDepth, RejectionPolicy fallback) {
+			if (maxDepth <= 0) throw new IllegalArgumentException("最大嵌套深度需大于0");
+			this.maxDepth = maxDepth;
+			this.fallback = fallback;
+		}
+
+		@Override
+		public void rejected(Runnable runnable, CustomThreadPool pool) {
+			int[] depth = DEPTH.get();
+			if (depth[0] >= maxDepth) {
+				fallback.rejected(runnable,pool);
+				return;
+			}
+			depth[0]++;
+			try {
+				runnable.run();
+			} finally {
+				depth[0]--;
+			}
+		}
+	}
+
+	/**
+	 * 丢弃任务并回调,用于记录指标或告警
+	 */
+	class Discard implements RejectionPolicy {
+
+		private final Consumer<Runnable> callback;
+
+		private final LongAdder DISCARDED = new LongAdder();
+
+		public Discard() {
+			this(null);
+		}
+
+		/**
+		 * @param callback 丢弃任务回调,可为null
+		 */
+		public Discard(Consumer<Runnable> callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public void rejected(Runnable runnable, CustomThreadPool pool) {
+			discard(runnable);
+		}
+
+		void discard(Runnable runnable) {
+			DISCARDED.increment();
+			cancel(runnable);
+			if (callback != null) callback.accept(runnable);
+		}
+
+		/**
+		 * @return 返回丢弃任务数
+		 */
+		public long getDiscarded() {
+			return DISCARDED.sum();
+		}
+	}
+
+	/**
+	 * 丢弃队列中最早任务后重新放入任务,被丢弃任务回调
+	 */
+	class DiscardOldest extends Discard {
+
+		public DiscardOldest() {
+			super();
+		}
+
+		/**
+		 * @param callback 丢弃任务回调,可为null
+		 */
+		public DiscardOldest(Consumer<Runnable> callback) {
+			super(callback);
+		}
+
+		@Override
+		public void rejected(Runnable runnable, CustomThreadPool pool) {
+			while (true) {
+				if (pool.offerQueue(runnable)) return;
+				Runnable oldest = pool.pollQueue();
+				// 队列已被工作线程取空仍放入失败,丢弃当前任务
+				if (oldest == null) {
+					discard(runnable);
+					return;
+				}
+				discard(oldest);
+			}
+		}
+	}
+
+	/**
+	 * 溢出到有界备用队列:主队列腾出空位后依次移回主队列执行,备用队列已满交由后备策略处理
+	 * 一个实例只能用于一个线程池,工作窃取模式不支持
+	 */
+	class Overflow implements RejectionPolicy {
+
+		private final BlockingQueue<Runnable> queue;
+
+		private final RejectionPolicy fallback;
+
+		/**
+		 * @param capacity 备用队列长度,已满时阻塞30秒等待空位
+		 */
+		public Overflow(int capacity) {
+			this(capacity,new Block(30,TimeUnit.SECONDS));
+		}
+
+		/**
+		 * @param capacity 备用队列长度
+		 * @param fallback 备用队列已满时的后备策略
+		 */
+		public Overflow(int capacity, RejectionPolicy fallback) {
+			queue = new ArrayBlockingQueue<>(capacity);
+			this.fallback = fallback;
+		}
+
+		@Override
+		public void rejected(Runnable runnable, CustomThreadPool pool) {
+			if (!queue.offer(runnable)) {
+				fallback.rejected(runnable,pool);
+				return;
+			}
+			pool.signalOverflow();
+		}
+
+		BlockingQueue<Runnable> getQueue() {
+			return queue;
+		}
+	}
+}
@@ -81,12 +81,34 @@ public class ThreadPool {
 	}
 
 	/**
-	 * 策略选择:决策 ? 抛出异常 : 阻塞二次判断处理
+	 * 自定义线程池拒绝策略:默认抛出RejectedExecutionException,需要背压时使用{@link RejectionPolicy.Block}
 	 */
-	private int isTactics;
+	private RejectionPolicy rejectionPolicy = new RejectionPolicy.Abort();
 
 	/**
-	 * 拒绝策略
+	 * 工作窃取模式:仅自定义线程池生效,以核心线程数创建工作线程,每个工作线程持有独立队列并随机窃取其他队列任务
+	 * 适用于大量细粒度短任务
+	 */
+	private boolean workStealing;
+
+	/**
+	 * 自适应线程数:仅自定义线程池生效,按任务等待时间与cpu时间之比及吞吐量变化在核心线程数与最大线程数之间调整线程数
+	 * 适用于IO与计算混合任务
+	 */
+	private boolean adaptive;
+
+	/**
+	 * 自适应线程数调整周期:毫秒
+	 */
+	private long adaptivePeriod = 1000L;
+
+	/**
+	 * 虚拟线程模式最大并发任务数:0不限制
+	 */
+	private int concurrency;
+
+	/**
+	 * jdk线程池拒绝策略
 	 */
 	private RejectedExecutionHandler denialPolicy = new ThreadPoolExecutor.AbortPolicy();
 
@@ -128,6 +150,41 @@ public class ThreadPool {
 		QUEUE = queue;
 	}
 
+	/**
+	 * @return 返回拒绝策略对应的旧策略编号,非旧策略返回-1
+	 * @deprecated 使用{@link #getRejectionPolicy()}
+	 */
+	@Deprecated
+	public int getIsTactics() {
+		if (rejectionPolicy instanceof RejectionPolicy.DiscardOldest) return 2;
+		if (rejectionPolicy instanceof RejectionPolicy.CallerRuns) return 1;
+		if (rejectionPolicy instanceof RejectionPolicy.Abort) return 0;
+		return -1;
+	}
+
+	/**
+	 * 策略选择:0抛出异常 1提交线程执行 2丢弃最早任务后重新提交
+	 * @param isTactics 旧策略编号
+	 * @deprecated 使用{@link #setRejectionPolicy(RejectionPolicy)}
+	 */
+	@Deprecated
+	public void setIsTactics(int isTactics) {
+		switch (isTactics) {
+			case 0:
+				rejectionPolicy = new RejectionPolicy.Abort();
+				return;
+			case 1:
+				// 旧策略不限制嵌套深度
+				rejectionPolicy = new RejectionPolicy.CallerRuns(Integer.MAX_VALUE);
+				return;
+			case 2:
+				rejectionPolicy = new RejectionPolicy.DiscardOldest();
+				return;
+			default:
+				throw new IllegalArgumentException("未知策略:" + isTactics);
+		}
+	}
+
 	/**
 	 * @return cpu核心数
 	 */
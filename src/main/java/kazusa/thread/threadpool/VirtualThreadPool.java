@@ -0,0 +1,274 @@
+package kazusa.thread.threadpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程池:每个任务一个虚拟线程,并发任务数由信号量限制
+ * 适用于大量阻塞IO任务,阻塞时只挂起虚拟线程不占用平台线程,无需按2 * cpu核心数 + 1估算线程数
+ * JDK21以下不支持虚拟线程,退化为有界平台线程池:先获取许可再创建线程,线程数不超过并发任务数(不限制时为2 * cpu核心数 + 1),
+ * 其余任务排队,由已有线程依次执行,避免每个任务一个平台线程耗尽系统线程
+ * @author kazusa
+ * @version 1.0.0
+ */
+public class VirtualThreadPool extends AbstractExecutorService {
+
+	private final ThreadFactory THREAD_FACTORY;
+
+	/**
+	 * 并发任务数限制:不限制为null
+	 */
+	private final Semaphore SEMAPHORE;
+
+	/**
+	 * 平台线程模式:当前JDK不支持虚拟线程
+	 */
+	private final boolean PLATFORM = !NamedThreadFactory.isVirtualSupported();
+
+	/**
+	 * 平台线程模式排队任务
+	 */
+	private final Queue<Runnable> PENDING = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 未结束任务数
+	 */
+	private final AtomicInteger ACTIVE = new AtomicInteger(0);
+
+	/**
+	 * 等待许可的线程与任务
+	 */
+	private final Map<Thread,Runnable> WAITING = new ConcurrentHashMap<>();
+
+	/**
+	 * 执行任务的线程
+	 */
+	private final Map<Thread,Boolean> RUNNING = new ConcurrentHashMap<>();
+
+	private final CountDownLatch TERMINATION = new CountDownLatch(1);
+
+	private volatile boolean shutdown;
+
+	private volatile boolean shutdownNow;
+
+	public VirtualThreadPool() {
+		this(0);
+	}
+
+	/**
+	 * @param concurrency 最大并发任务数,0不限制
+	 */
+	public VirtualThreadPool(int concurrency) {
+		this(concurrency,NamedThreadFactory.ofVirtual("虚拟线程"));
+	}
+
+	/**
+	 * @param threadPool 线程池参数对象:使用并发任务数限制
+	 */
+	public VirtualThreadPool(ThreadPool threadPool) {
+		this(threadPool.getConcurrency());
+	}
+
+	/**
+	 * @param concurrency 最大并发任务数,0不限制
+	 * @param threadFactory 线程工厂
+	 */
+	public VirtualThreadPool(int concurrency, ThreadFactory threadFactory) {
+		if (concurrency < 0) throw new IllegalArgumentException("并发任务数不能为负数");
+		THREAD_FACTORY = threadFactory;
+		// 平台线程模式必须限制线程数
+		if (PLATFORM && concurrency == 0) concurrency = 2 * Runtime.getRuntime().availableProcessors() + 1;
+		SEMAPHORE = concurrency == 0 ? null : new Semaphore(concurrency,true);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (command == null) throw new NullPointerException();
+		ACTIVE.incrementAndGet();
+		// 计数后再检查,保证关闭后计数归零即终止
+		if (shutdown) {
+			exit();
+			throw new RejectedExecutionException("线程池已关闭");
+		}
+		if (PLATFORM) {
+			PENDING.offer(command);
+			if (!SEMAPHORE.tryAcquire()) return;
+			try {
+				newDrainer();
+			} catch (RuntimeException | Error e) {
+				// 任务已被其他线程取走时照常执行
+				if (!PENDING.remove(command)) return;
+				exit();
+				throw e;
+			}
+			return;
+		}
+		try {
+			THREAD_FACTORY.newThread(() -> run(command)).start();
+		} catch (RuntimeException | Error e) {
+			exit();
+			throw e;
+		}
+	}
+
+	/**
+	 * 已持有许可时创建平台线程执行排队任务
+	 */
+	private void newDrainer() {
+		try {
+			THREAD_FACTORY.newThread(this::drain).start();
+		} catch (RuntimeException | Error e) {
+			SEMAPHORE.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * 平台线程模式:持有许可依次执行排队任务,队列为空时释放许可结束
+	 */
+	private void drain() {
+		Thread thread = Thread.currentThread();
+		boolean completed = false;
+		try {
+			do {
+				Runnable command;
+				while ((command = PENDING.poll()) != null) {
+					// 清除上一个任务遗留的中断标记
+					if (!shutdownNow) Thread.interrupted();
+					RUNNING.put(thread,Boolean.TRUE);
+					try {
+						command.run();
+					} catch (RuntimeException e) {
+						// 与虚拟线程模式相同交由未捕获异常处理器,线程继续执行排队任务
+						thread.getUncaughtExceptionHandler().uncaughtException(thread,e);
+					} finally {
+						RUNNING.remove(thread);
+						exit();
+					}
+				}
+				SEMAPHORE.release();
+				// 释放许可后重新检查,避免错过释放前放入的任务
+			} while (!PENDING.isEmpty() && SEMAPHORE.tryAcquire());
+			completed = true;
+		} finally {
+			// 任务抛出Error:释放许可并补充线程执行排队任务
+			if (!completed) {
+				SEMAPHORE.release();
+				if (!PENDING.isEmpty() && SEMAPHORE.tryAcquire()) newDrainer();
+			}
+		}
+	}
+
+	/**
+	 * 获取许可后执行任务
+	 * @param command 任务
+	 */
+	private void run(Runnable command) {
+		Thread thread = Thread.currentThread();
+		try {
+			if (SEMAPHORE != null) {
+				WAITING.put(thread,command);
+				try {
+					SEMAPHORE.acquire();
+				} catch (InterruptedException e) {
+					// 强行关闭:任务已由shutdownNow()返回
+					return;
+				}
+				// 获取许可时任务已被shutdownNow()取走
+				if (WAITING.remove(thread) == null) {
+					SEMAPHORE.release();
+					return;
+				}
+			}
+			RUNNING.put(thread,Boolean.TRUE);
+			try {
+				command.run();
+			} finally {
+				RUNNING.remove(thread);
+				if (SEMAPHORE != null) SEMAPHORE.release();
+			}
+		} finally {
+			WAITING.remove(thread);
+			exit();
+		}
+	}
+
+	/**
+	 * 线程结束:关闭后最后一个线程结束时终止
+	 */
+	private void exit() {
+		if (ACTIVE.decrementAndGet() == 0 && shutdown) TERMINATION.countDown();
+	}
+
+	/**
+	 * @return 返回执行中任务数
+	 */
+	public int getActiveCount() {
+		return RUNNING.size();
+	}
+
+	/**
+	 * @return 返回等待许可任务数
+	 */
+	public int getQueueSize() {
+		return WAITING.size() + PENDING.size();
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if (ACTIVE.get() == 0) TERMINATION.countDown();
+	}
+
+	/**
+	 * 强行关闭:中断执行中任务
+	 * @return 返回等待许可未执行任务集合
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdownNow = true;
+		shutdown();
+		List<Runnable> list = new ArrayList<>();
+		Runnable command;
+		while ((command = PENDING.poll()) != null) {
+			list.add(command);
+			exit();
+		}
+		for (Thread thread : WAITING.keySet()) {
+			Runnable runnable = WAITING.remove(thread);
+			if (runnable == null) continue;
+			list.add(runnable);
+			thread.interrupt();
+		}
+		for (Thread thread : RUNNING.keySet()) {
+			thread.interrupt();
+		}
+		return list;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return TERMINATION.getCount() == 0;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return TERMINATION.await(timeout,unit);
+	}
+}
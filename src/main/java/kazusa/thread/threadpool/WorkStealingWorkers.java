@@ -0,0 +1,319 @@
+package kazusa.thread.threadpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 工作窃取执行引擎:每个工作线程持有一个无锁双端队列
+ * 工作线程内提交的任务压入自身队列队首,外部提交的任务随机分配到某个队列队尾
+ * 工作线程后进先出执行自身队列任务,自身队列为空时从随机位置开始窃取其他队列队尾任务,仍无任务则挂起
+ * @author kazusa
+ * @version 1.0.0
+ * @see CustomThreadPool
+ */
+class WorkStealingWorkers {
+
+	private static final int RUNNING = 0;
+
+	private static final int SHUTDOWN = 1;
+
+	private static final int STOP = 2;
+
+	private final Worker[] WORKERS;
+
+	/**
+	 * 所有队列任务数上限
+	 */
+	private final int CAPACITY;
+
+	/**
+	 * 所有队列任务数:提交前占位,领取后扣减
+	 */
+	private final AtomicInteger SIZE = new AtomicInteger(0);
+
+	/**
+	 * 挂起工作线程数
+	 */
+	private final AtomicInteger IDLE = new AtomicInteger(0);
+
+	private final ThreadFactory THREAD_FACTORY;
+
+	/**
+	 * 执行任务方式
+	 */
+	private final Consumer<Runnable> RUNNER;
+
+	/**
+	 * 当前线程数记录
+	 */
+	private final AtomicInteger THREAD_COUNT;
+
+	/**
+	 * 工作线程结束回调
+	 */
+	private final Runnable ON_EXIT;
+
+	/**
+	 * 当前线程所属工作线程
+	 */
+	private final ThreadLocal<Worker> CURRENT = new ThreadLocal<>();
+
+	private final AtomicBoolean STARTED = new AtomicBoolean(false);
+
+	private volatile int runState = RUNNING;
+
+	/**
+	 * @param parallelism 工作线程数
+	 * @param capacity 所有队列任务数上限
+	 * @param threadFactory 线程工厂
+	 * @param runner 执行任务方式
+	 * @param threadCount 当前线程数记录
+	 * @param onExit 工作线程结束回调
+	 */
+	WorkStealingWorkers(int parallelism,int capacity,ThreadFactory threadFactory,Consumer<Runnable> runner,AtomicInteger threadCount,Runnable onExit) {
+		if (parallelism <= 0) throw new IllegalArgumentException("工作窃取模式线程数需大于0");
+		WORKERS = new Worker[parallelism];
+		for (int i = 0; i < parallelism; i++) {
+			WORKERS[i] = new Worker();
+		}
+		CAPACITY = capacity;
+		THREAD_FACTORY = threadFactory;
+		RUNNER = runner;
+		THREAD_COUNT = threadCount;
+		ON_EXIT = onExit;
+	}
+
+	private final class Worker implements Runnable {
+
+		private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+
+		private volatile boolean idle;
+
+		private volatile Thread thread;
+
+		@Override
+		public void run() {
+			CURRENT.set(this);
+			boolean completedAbruptly = true;
+			try {
+				while (runState < STOP) {
+					Runnable runnable = deque.pollFirst();
+					if (runnable == null) runnable = steal(this);
+					if (runnable != null) {
+						SIZE.decrementAndGet();
+						RUNNER.accept(runnable);
+						continue;
+					}
+					if (runState == SHUTDOWN && SIZE.get() == 0) break;
+					park();
+				}
+				completedAbruptly = false;
+			} finally {
+				CURRENT.remove();
+				// 任务抛出Error时线程结束:为同一工作线程补充线程,继续处理自身队列,线程数不变
+				if (!completedAbruptly || !restart(this)) {
+					THREAD_COUNT.decrementAndGet();
+					ON_EXIT.run();
+				}
+			}
+		}
+
+		/**
+		 * 挂起前登记空闲后重新检查任务数,与提交方登记任务后检查空闲构成双向检查,避免丢失唤醒
+		 */
+		private void park() {
+			idle = true;
+			IDLE.incrementAndGet();
+			try {
+				if (SIZE.get() == 0 && runState == RUNNING) LockSupport.park(this);
+			} finally {
+				idle = false;
+				IDLE.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * 从随机位置开始窃取其他队列队尾任务
+	 * @param self 当前工作线程
+	 * @return 任务,无任务返回null
+	 */
+	private Runnable steal(Worker self) {
+		int length = WORKERS.length;
+		int start = ThreadLocalRandom.current().nextInt(length);
+		for (int i = 0; i < length; i++) {
+			Worker victim = WORKERS[(start + i) % length];
+			if (victim == self) continue;
+			Runnable runnable = victim.deque.pollLast();
+			if (runnable != null) return runnable;
+		}
+		return null;
+	}
+
+	/**
+	 * 为工作线程补充线程
+	 * @param worker 线程异常结束的工作线程
+	 * @return 已强行关闭或线程工厂未创建线程返回false
+	 */
+	private boolean restart(Worker worker) {
+		if (runState >= STOP) return false;
+		Thread thread = THREAD_FACTORY.newThread(worker);
+		if (thread == null) return false;
+		worker.thread = thread;
+		thread.start();
+		// 补充期间被强行关闭
+		if (runState >= STOP) thread.interrupt();
+		return true;
+	}
+
+	/**
+	 * 启动全部工作线程
+	 */
+	private void start() {
+		if (STARTED.get() || !STARTED.compareAndSet(false,true)) return;
+		for (Worker worker : WORKERS) {
+			worker.thread = THREAD_FACTORY.newThread(worker);
+			THREAD_COUNT.incrementAndGet();
+			worker.thread.start();
+		}
+	}
+
+	/**
+	 * 提交任务
+	 * @param runnable 任务
+	 * @return 队列已满或已关闭返回false
+	 */
+	boolean offer(Runnable runnable) {
+		if (runState != RUNNING) return false;
+		while (true) {
+			int size = SIZE.get();
+			if (size >= CAPACITY) return false;
+			if (SIZE.compareAndSet(size,size + 1)) break;
+		}
+		start();
+		Worker current = CURRENT.get();
+		Worker target;
+		if (current != null) {
+			target = current;
+			target.deque.offerFirst(runnable);
+		} else {
+			target = WORKERS[ThreadLocalRandom.current().nextInt(WORKERS.length)];
+			target.deque.offerLast(runnable);
+		}
+		signal(target);
+		return true;
+	}
+
+	/**
+	 * 批量提交任务:一次占位,从随机位置起轮流放入各队列队尾,按任务数唤醒空闲工作线程
+	 * @param runnables 任务集合
+	 * @return 返回放入任务数,队列已满或已关闭时少于任务数
+	 */
+	int offerAll(List<? extends Runnable> runnables) {
+		if (runState != RUNNING || runnables.isEmpty()) return 0;
+		int n;
+		while (true) {
+			int size = SIZE.get();
+			n = Math.min(runnables.size(),CAPACITY - size);
+			if (n <= 0) return 0;
+			if (SIZE.compareAndSet(size,size + n)) break;
+		}
+		start();
+		int length = WORKERS.length;
+		int start = ThreadLocalRandom.current().nextInt(length);
+		for (int i = 0; i < n; i++) {
+			WORKERS[(start + i) % length].deque.offerLast(runnables.get(i));
+		}
+		// 每个任务最多唤醒一个空闲工作线程
+		int wake = n;
+		for (Worker worker : WORKERS) {
+			if (wake == 0) break;
+			if (worker.idle) {
+				LockSupport.unpark(worker.thread);
+				wake--;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * 唤醒目标工作线程,目标忙碌时唤醒一个空闲工作线程窃取任务
+	 * @param target 放入任务的工作线程
+	 */
+	private void signal(Worker target) {
+		if (target.idle) {
+			LockSupport.unpark(target.thread);
+			return;
+		}
+		if (IDLE.get() == 0) return;
+		for (Worker worker : WORKERS) {
+			if (worker.idle) {
+				LockSupport.unpark(worker.thread);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 取出一个任务:从随机位置开始窃取首个非空队列队尾任务,即该队列中最早由外部放入的任务,不保证为所有队列中最早放入的任务
+	 * @return 任务,无任务返回null
+	 */
+	Runnable poll() {
+		Runnable runnable = steal(null);
+		if (runnable != null) SIZE.decrementAndGet();
+		return runnable;
+	}
+
+	/**
+	 * @return 返回所有队列任务数
+	 */
+	int size() {
+		return SIZE.get();
+	}
+
+	/**
+	 * 不再接收任务,执行完队列中任务后工作线程结束
+	 * @return 工作线程未启动返回false
+	 */
+	boolean shutdown() {
+		if (runState < SHUTDOWN) runState = SHUTDOWN;
+		return wakeAll();
+	}
+
+	/**
+	 * 不再接收任务,中断工作线程
+	 * @return 返回未执行任务集合
+	 */
+	List<Runnable> shutdownNow() {
+		runState = STOP;
+		List<Runnable> list = new ArrayList<>();
+		for (Worker worker : WORKERS) {
+			Runnable runnable;
+			while ((runnable = worker.deque.pollFirst()) != null) {
+				SIZE.decrementAndGet();
+				list.add(runnable);
+			}
+			if (worker.thread != null) worker.thread.interrupt();
+		}
+		return list;
+	}
+
+	/**
+	 * @return 工作线程未启动返回false
+	 */
+	private boolean wakeAll() {
+		// 禁止关闭后再启动
+		if (!STARTED.get() && STARTED.compareAndSet(false,true)) return false;
+		for (Worker worker : WORKERS) {
+			if (worker.thread != null) LockSupport.unpark(worker.thread);
+		}
+		return true;
+	}
+}
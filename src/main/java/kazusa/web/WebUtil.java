@@ -132,18 +132,13 @@ public class WebUtil {
 		return new http<>(asyncHandle);
 	}
 
-	/**
-	 * 链接对象
-	 */
-	private static ProxyIP connection;
-
 	/**
 	 * @param proxyHttp 代理http对象
 	 * @return 返回代理http对象
 	 * @throws Exception
 	 */
 	public static <T> http<T> getProxyHttp(ProxyHttp<T> proxyHttp) throws Exception {
-		connection = proxyHttp.getProxyIpPool().getConnection();
+		ProxyIP connection = proxyHttp.getProxyIpPool().select();
 		if (connection == null) return null;
 		http<T> http = getHttp(null,proxyHttp.getHttpResponseType());
 		// 配置初始代理
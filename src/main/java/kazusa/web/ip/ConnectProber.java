@@ -0,0 +1,293 @@
+package kazusa.web.ip;
+
+import kazusa.thread.threadpool.NamedThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP连接探测器:一个选择器线程以非阻塞SocketChannel同时发起大量连接,连接建立即可达
+ * 替代逐个创建ping子进程,同时打开连接数受上限约束,超出部分排队
+ * @author kazusa
+ * @version 1.0.0
+ * @see ProxyValidator
+ */
+public class ConnectProber implements Closeable {
+
+	/**
+	 * 共享探测器
+	 */
+	private static class Holder {
+
+		private static final ConnectProber SHARED = newShared();
+
+		private static ConnectProber newShared() {
+			try {
+				return new ConnectProber(3,TimeUnit.SECONDS,1000);
+			} catch (IOException e) {
+				throw new IllegalStateException("创建连接探测器失败",e);
+			}
+		}
+	}
+
+	/**
+	 * @return 返回共享探测器:默认超时3秒,最多同时打开1000个连接
+	 */
+	public static ConnectProber getShared() {
+		return Holder.SHARED;
+	}
+
+	private final Selector SELECTOR;
+
+	private final Thread THREAD;
+
+	/**
+	 * 默认超时时间:纳秒
+	 */
+	private final long TIMEOUT;
+
+	/**
+	 * 同时打开连接数上限
+	 */
+	private final int MAX_OPEN;
+
+	/**
+	 * 待发起连接:由选择器线程取出
+	 */
+	private final Queue<Connect> SUBMITTED = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 超出上限等待发起的连接:仅选择器线程访问
+	 */
+	private final Queue<Connect> WAITING = new ArrayDeque<>();
+
+	/**
+	 * 按到期时间排序的已发起连接:仅选择器线程访问
+	 */
+	private final PriorityQueue<Connect> DEADLINES = new PriorityQueue<>(Comparator.comparingLong(connect -> connect.deadline));
+
+	/**
+	 * 已打开连接数:仅选择器线程访问
+	 */
+	private int open;
+
+	private volatile boolean closed;
+
+	public ConnectProber() throws IOException {
+		this(3,TimeUnit.SECONDS,1000);
+	}
+
+	/**
+	 * @param timeout 默认超时时间
+	 * @param timeUnit 超时时间单位
+	 * @param maxOpen 同时打开连接数上限:不超过进程可打开文件数
+	 * @throws IOException 打开选择器失败
+	 */
+	public ConnectProber(long timeout, TimeUnit timeUnit, int maxOpen) throws IOException {
+		if (timeout <= 0) throw new IllegalArgumentException("超时时间需大于0");
+		if (maxOpen <= 0) throw new IllegalArgumentException("连接数上限需大于0");
+		TIMEOUT = timeUnit.toNanos(timeout);
+		MAX_OPEN = maxOpen;
+		SELECTOR = Selector.open();
+		THREAD = new NamedThreadFactory("连接探测",true).newThread(this::run);
+		THREAD.start();
+	}
+
+	/**
+	 * 一次连接
+	 */
+	private static final class Connect {
+
+		private final InetSocketAddress ADDRESS;
+
+		private final long TIMEOUT;
+
+		private final CompletableFuture<Boolean> FUTURE = new CompletableFuture<>();
+
+		/**
+		 * 到期时间:发起连接时计算,排队时间不计入超时
+		 */
+		private long deadline;
+
+		private SocketChannel channel;
+
+		private Connect(InetSocketAddress address, long timeout) {
+			ADDRESS = address;
+			TIMEOUT = timeout;
+		}
+	}
+
+	/**
+	 * 探测主机端口是否可建立TCP连接
+	 * @param host 主机
+	 * @param port 端口
+	 * @return 返回异步结果:可达为true,拒绝、超时或地址无效为false
+	 */
+	public CompletableFuture<Boolean> probe(String host, int port) {
+		if (port < 0 || port > 0xFFFF) return CompletableFuture.completedFuture(false);
+		return probe(new InetSocketAddress(host,port),TIMEOUT,TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param address 地址
+	 * @param timeout 超时时间
+	 * @param timeUnit 超时时间单位
+	 * @return 返回异步结果:可达为true,拒绝、超时或地址无效为false
+	 * @throws RejectedExecutionException 探测器已关闭
+	 */
+	public CompletableFuture<Boolean> probe(InetSocketAddress address, long timeout, TimeUnit timeUnit) {
+		if (closed) throw new RejectedExecutionException("连接探测器已关闭");
+		if (address.isUnresolved()) return CompletableFuture.completedFuture(false);
+		Connect connect = new Connect(address,timeUnit.toNanos(timeout));
+		SUBMITTED.add(connect);
+		// 提交期间被关闭
+		if (closed && SUBMITTED.remove(connect)) connect.FUTURE.complete(false);
+		SELECTOR.wakeup();
+		return connect.FUTURE;
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				accept();
+				long now = System.nanoTime();
+				expire(now);
+				Connect next = DEADLINES.peek();
+				if (next == null) SELECTOR.select();
+				else SELECTOR.select(Math.max(1,TimeUnit.NANOSECONDS.toMillis(next.deadline - now)));
+				Iterator<SelectionKey> iterator = SELECTOR.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (key.isValid() && key.isConnectable()) finish((Connect) key.attachment());
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("连接探测器选择器异常:" + e);
+		} finally {
+			closed = true;
+			shutdown();
+		}
+	}
+
+	/**
+	 * 在上限内发起新提交与等待中的连接
+	 */
+	private void accept() {
+		Connect connect;
+		while ((connect = SUBMITTED.poll()) != null) {
+			WAITING.add(connect);
+		}
+		while (open < MAX_OPEN && (connect = WAITING.poll()) != null) {
+			connect(connect);
+		}
+	}
+
+	private void connect(Connect connect) {
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open();
+			open++;
+			connect.channel = channel;
+			channel.configureBlocking(false);
+			if (channel.connect(connect.ADDRESS)) {
+				complete(connect,true);
+				return;
+			}
+			channel.register(SELECTOR,SelectionKey.OP_CONNECT,connect);
+			connect.deadline = System.nanoTime() + connect.TIMEOUT;
+			DEADLINES.add(connect);
+		} catch (IOException | RuntimeException e) {
+			// 如地址类型不支持或无连接权限:只结束本次探测,不影响选择器线程
+			if (channel == null) connect.FUTURE.complete(false);
+			else complete(connect,false);
+		}
+	}
+
+	private void finish(Connect connect) {
+		try {
+			complete(connect,connect.channel.finishConnect());
+		} catch (IOException | RuntimeException e) {
+			complete(connect,false);
+		}
+	}
+
+	/**
+	 * 结束到期连接
+	 * @param now 当前时间
+	 */
+	private void expire(long now) {
+		Connect connect;
+		while ((connect = DEADLINES.peek()) != null) {
+			if (connect.channel == null) {
+				// 已完成
+				DEADLINES.poll();
+				continue;
+			}
+			if (connect.deadline > now) return;
+			DEADLINES.poll();
+			complete(connect,false);
+		}
+	}
+
+	/**
+	 * 关闭连接并完成结果
+	 * @param connect 连接
+	 * @param reachable 是否可达
+	 */
+	private void complete(Connect connect, boolean reachable) {
+		SocketChannel channel = connect.channel;
+		if (channel == null) return;
+		connect.channel = null;
+		open--;
+		try {
+			// 关闭时取消注册
+			channel.close();
+		} catch (IOException ignored) {
+			// 探测结果已确定,关闭失败不影响结果
+		}
+		connect.FUTURE.complete(reachable);
+	}
+
+	/**
+	 * 关闭选择器线程,未完成探测以false结束
+	 */
+	private void shutdown() {
+		for (SelectionKey key : new ArrayList<>(SELECTOR.keys())) {
+			if (key.attachment() instanceof Connect) complete((Connect) key.attachment(),false);
+		}
+		Connect connect;
+		while ((connect = SUBMITTED.poll()) != null) {
+			connect.FUTURE.complete(false);
+		}
+		while ((connect = WAITING.poll()) != null) {
+			connect.FUTURE.complete(false);
+		}
+		DEADLINES.clear();
+		try {
+			SELECTOR.close();
+		} catch (IOException e) {
+			System.err.println("关闭选择器异常:" + e);
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		SELECTOR.wakeup();
+	}
+}
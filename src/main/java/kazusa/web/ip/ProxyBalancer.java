@@ -0,0 +1,222 @@
+package kazusa.web.ip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代理IP健康选择器:二选一负载均衡
+ * 随机取两个未剔除代理,选择延迟除以成功率更小者,兼顾优先使用最快健康代理与分散负载
+ * 全部代理被剔除时返回最早到期的代理
+ * @author kazusa
+ * @version 1.0.0
+ * @see ProxyStats
+ */
+public class ProxyBalancer {
+
+	/**
+	 * 连续失败剔除阈值
+	 */
+	private final int FAILURE_THRESHOLD;
+
+	/**
+	 * 首次剔除时长:纳秒
+	 */
+	private final long BASE_EJECTION;
+
+	/**
+	 * 最大剔除时长:纳秒
+	 */
+	private final long MAX_EJECTION;
+
+	/**
+	 * 代理统计:键为ip:端口
+	 */
+	private final Map<String,ProxyStats> STATS = new ConcurrentHashMap<>();
+
+	/**
+	 * 参与选择的代理:写时复制
+	 */
+	private volatile ProxyStats[] proxies = new ProxyStats[0];
+
+	public ProxyBalancer() {
+		this(3,1,TimeUnit.SECONDS.toMillis(300),TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param failureThreshold 连续失败剔除阈值
+	 * @param baseEjection 首次剔除时长,之后每次连续剔除翻倍
+	 * @param maxEjection 最大剔除时长
+	 * @param timeUnit 时间单位
+	 */
+	public ProxyBalancer(int failureThreshold, long baseEjection, long maxEjection, TimeUnit timeUnit) {
+		if (failureThreshold <= 0) throw new IllegalArgumentException("连续失败剔除阈值需大于0");
+		if (baseEjection <= 0 || maxEjection < baseEjection) throw new IllegalArgumentException("剔除时长需大于0且不超过最大剔除时长");
+		FAILURE_THRESHOLD = failureThreshold;
+		BASE_EJECTION = timeUnit.toNanos(baseEjection);
+		MAX_EJECTION = timeUnit.toNanos(maxEjection);
+	}
+
+	private static String key(ProxyIP proxyIP) {
+		return proxyIP.getIp() + ":" + proxyIP.getPort();
+	}
+
+	/**
+	 * 替换参与选择的代理:保留仍在集合内代理的统计,用于整体刷新
+	 * @param proxyIPs 代理IP集合
+	 */
+	public synchronized void update(Collection<ProxyIP> proxyIPs) {
+		List<ProxyStats> list = new ArrayList<>(proxyIPs.size());
+		Map<String,ProxyStats> retained = new HashMap<>();
+		for (ProxyIP proxyIP : proxyIPs) {
+			String key = key(proxyIP);
+			if (retained.containsKey(key)) continue;
+			ProxyStats stats = STATS.get(key);
+			if (stats == null) stats = new ProxyStats(proxyIP);
+			retained.put(key,stats);
+			list.add(stats);
+		}
+		STATS.keySet().retainAll(retained.keySet());
+		STATS.putAll(retained);
+		proxies = list.toArray(new ProxyStats[0]);
+	}
+
+	/**
+	 * 合并参与选择的代理:添加有效代理,已存在的代理保留统计与剔除记录,只移除被剔除代理
+	 * 用于后台增量校验,未参与本轮校验的代理不受影响
+	 * @param valid 有效代理IP集合
+	 * @param evicted 被剔除代理IP集合
+	 */
+	public synchronized void merge(Collection<ProxyIP> valid, Collection<ProxyIP> evicted) {
+		Set<String> removed = new HashSet<>();
+		for (ProxyIP proxyIP : evicted) {
+			removed.add(key(proxyIP));
+		}
+		for (ProxyIP proxyIP : valid) {
+			removed.remove(key(proxyIP));
+		}
+		List<ProxyStats> list = new ArrayList<>(proxies.length + valid.size());
+		for (ProxyStats stats : proxies) {
+			if (!removed.contains(key(stats.getProxyIP()))) list.add(stats);
+		}
+		STATS.keySet().removeAll(removed);
+		for (ProxyIP proxyIP : valid) {
+			String key = key(proxyIP);
+			if (STATS.containsKey(key)) continue;
+			ProxyStats stats = new ProxyStats(proxyIP);
+			STATS.put(key,stats);
+			list.add(stats);
+		}
+		proxies = list.toArray(new ProxyStats[0]);
+	}
+
+	/**
+	 * 添加代理:已存在时忽略
+	 * @param proxyIP 代理IP
+	 */
+	public synchronized void add(ProxyIP proxyIP) {
+		String key = key(proxyIP);
+		if (STATS.containsKey(key)) return;
+		ProxyStats stats = new ProxyStats(proxyIP);
+		STATS.put(key,stats);
+		ProxyStats[] array = Arrays.copyOf(proxies,proxies.length + 1);
+		array[array.length - 1] = stats;
+		proxies = array;
+	}
+
+	/**
+	 * 移除代理
+	 * @param proxyIP 代理IP
+	 */
+	public synchronized void remove(ProxyIP proxyIP) {
+		ProxyStats stats = STATS.remove(key(proxyIP));
+		if (stats == null) return;
+		List<ProxyStats> list = new ArrayList<>(Arrays.asList(proxies));
+		list.remove(stats);
+		proxies = list.toArray(new ProxyStats[0]);
+	}
+
+	/**
+	 * 选择代理
+	 * @return 返回代价较小的未剔除代理,无代理返回null
+	 */
+	public ProxyIP select() {
+		ProxyStats[] array = proxies;
+		int n = array.length;
+		if (n == 0) return null;
+		long now = System.nanoTime();
+		if (n == 1) return array[0].getProxyIP();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// 随机两次取样,剔除代理较多时退化为遍历
+		for (int attempt = 0; attempt < 2; attempt++) {
+			int i = random.nextInt(n);
+			int j = random.nextInt(n - 1);
+			if (j >= i) j++;
+			ProxyStats a = array[i];
+			ProxyStats b = array[j];
+			boolean availableA = !a.isEjected(now);
+			boolean availableB = !b.isEjected(now);
+			if (availableA && availableB) return (a.cost() <= b.cost() ? a : b).getProxyIP();
+			if (availableA) return a.getProxyIP();
+			if (availableB) return b.getProxyIP();
+		}
+		ProxyStats best = null;
+		ProxyStats soonest = array[0];
+		for (ProxyStats stats : array) {
+			if (!stats.isEjected(now)) {
+				if (best == null || stats.cost() < best.cost()) best = stats;
+			} else if (stats.getEjectedUntil() - soonest.getEjectedUntil() < 0) {
+				soonest = stats;
+			}
+		}
+		return (best != null ? best : soonest).getProxyIP();
+	}
+
+	/**
+	 * 记录请求结果
+	 * @param proxyIP 代理IP
+	 * @param success 是否成功
+	 * @param latency 延迟,失败时忽略
+	 * @param timeUnit 延迟单位
+	 * @return 本次失败导致剔除返回true
+	 */
+	public boolean report(ProxyIP proxyIP, boolean success, long latency, TimeUnit timeUnit) {
+		ProxyStats stats = STATS.get(key(proxyIP));
+		if (stats == null) return false;
+		if (success) {
+			stats.success(timeUnit.toNanos(latency));
+			return false;
+		}
+		return stats.failure(System.nanoTime(),FAILURE_THRESHOLD,BASE_EJECTION,MAX_EJECTION);
+	}
+
+	/**
+	 * @param proxyIP 代理IP
+	 * @return 返回代理统计,未参与选择返回null
+	 */
+	public ProxyStats getStats(ProxyIP proxyIP) {
+		return STATS.get(key(proxyIP));
+	}
+
+	/**
+	 * @return 返回全部代理统计
+	 */
+	public List<ProxyStats> getStats() {
+		return Arrays.asList(proxies.clone());
+	}
+
+	/**
+	 * @return 返回参与选择的代理数
+	 */
+	public int size() {
+		return proxies.length;
+	}
+}
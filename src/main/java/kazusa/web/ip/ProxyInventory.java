@@ -0,0 +1,96 @@
+package kazusa.web.ip;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 代理IP池库存:不可变快照与游标整体CAS替换,供连接池创建资源时依次取出
+ * 游标之前的IP已放入连接池,合并时只移除被剔除IP并在末尾追加补充IP,不会重复取出已放入连接池的IP
+ * @author kazusa
+ * @version 1.0.0
+ * @see ProxyIpPool
+ */
+final class ProxyInventory {
+
+	/**
+	 * 库存状态
+	 */
+	private static final class State {
+
+		private final List<ProxyIP> IPS;
+
+		/**
+		 * 已取出IP数:下一个取出位置
+		 */
+		private final int CURSOR;
+
+		private State(List<ProxyIP> ips, int cursor) {
+			IPS = ips;
+			CURSOR = cursor;
+		}
+	}
+
+	private final AtomicReference<State> STATE;
+
+	ProxyInventory(Collection<ProxyIP> ips) {
+		STATE = new AtomicReference<>(new State(Collections.unmodifiableList(new ArrayList<>(ips)),0));
+	}
+
+	static String key(ProxyIP proxyIP) {
+		return proxyIP.getIp() + ":" + proxyIP.getPort();
+	}
+
+	/**
+	 * @return 返回下一个IP,已全部取出返回null
+	 */
+	ProxyIP next() {
+		while (true) {
+			State state = STATE.get();
+			if (state.CURSOR >= state.IPS.size()) return null;
+			if (STATE.compareAndSet(state,new State(state.IPS,state.CURSOR + 1))) return state.IPS.get(state.CURSOR);
+		}
+	}
+
+	/**
+	 * 合并库存:移除被剔除IP,未在库存中的补充IP追加到末尾等待取出
+	 * @param evicted 被剔除IP集合
+	 * @param added 补充IP集合
+	 */
+	void merge(Collection<ProxyIP> evicted, Collection<ProxyIP> added) {
+		Set<String> removed = new HashSet<>();
+		for (ProxyIP proxyIP : evicted) {
+			removed.add(key(proxyIP));
+		}
+		while (true) {
+			State state = STATE.get();
+			List<ProxyIP> ips = new ArrayList<>(state.IPS.size() + added.size());
+			Set<String> present = new HashSet<>();
+			int cursor = state.CURSOR;
+			for (int i = 0; i < state.IPS.size(); i++) {
+				ProxyIP proxyIP = state.IPS.get(i);
+				if (!removed.contains(key(proxyIP)) && present.add(key(proxyIP))) {
+					ips.add(proxyIP);
+					continue;
+				}
+				// 移除已取出的IP时游标随之前移
+				if (i < state.CURSOR) cursor--;
+			}
+			for (ProxyIP proxyIP : added) {
+				if (present.add(key(proxyIP))) ips.add(proxyIP);
+			}
+			if (STATE.compareAndSet(state,new State(Collections.unmodifiableList(ips),cursor))) return;
+		}
+	}
+
+	/**
+	 * @return 返回当前库存快照:已放入连接池与等待取出的IP
+	 */
+	List<ProxyIP> snapshot() {
+		return STATE.get().IPS;
+	}
+}
@@ -4,25 +4,18 @@ import kazusa.common.codeoptimize.CodeOptimizeUtil;
 import kazusa.common.connectpool.ConnectionImpl;
 import kazusa.common.connectpool.CustomConnectPool;
 import kazusa.io.IOUtil;
-import kazusa.string.StringUtil;
 import kazusa.thread.ThreadUtil;
+import kazusa.thread.TimingWheel;
+import kazusa.thread.threadpool.CustomThreadPool;
 import kazusa.web.WebUtil;
 import kazusa.web.http.http;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ProxySelector;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpResponse;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
-
-import static kazusa.io.IOUtil.*;
 
 /**
  * 代理IP池
@@ -31,20 +24,93 @@ import static kazusa.io.IOUtil.*;
  */
 public class ProxyIpPool extends CustomConnectPool<ProxyIP> {
 
+	/**
+	 * 默认代理IP存储文件
+	 */
+	private static final String STORE_PATH = IOUtil.path("/java/src/main/java/javalanguage/utils/web/ip/","proxy.db");
+
+	/**
+	 * 旧版主用文件:首次打开空的默认存储时导入
+	 */
+	private static final String ZY_PATH = IOUtil.path("/java/src/main/java/javalanguage/utils/web/ip/","主用.txt");
+
+	/**
+	 * 旧版备用文件:首次打开空的默认存储时导入
+	 */
+	private static final String BY_PATH = IOUtil.path("/java/src/main/java/javalanguage/utils/web/ip/","备用.txt");
+
+	/**
+	 * 默认主用层级每种类型存放IP数
+	 */
+	private static final int PRIMARY_LIMIT = 50;
+
+	/**
+	 * 已打开的代理IP存储:同一文件的多个IP池共用一个存储
+	 */
+	private static final Map<String,ProxyStore> STORES = new ConcurrentHashMap<>();
+
+	/**
+	 * 库存:连接池创建资源时依次取出
+	 */
+	private final ProxyInventory INVENTORY;
+
+	/**
+	 * 代理IP存储
+	 */
+	private final ProxyStore STORE;
+
+	/**
+	 * IP类型:读取、补充与持久化IP均限定此类型,为空时为全部类型
+	 */
+	private final String TYPE;
+
+	/**
+	 * 更新资源:同一IP池的更新依次执行
+	 */
+	private final Object REFRESH = new Object();
+
+	/**
+	 * 更新IP池内资源触发值
+	 */
+	private volatile int threshold;
+
+	/**
+	 * 主用层级存放该类型IP数
+	 */
+	private volatile int primaryLimit = PRIMARY_LIMIT;
+
 	public ProxyIpPool(ConnectionImpl<ProxyIP> connectionImpl) {
 		super(connectionImpl);
+		INVENTORY = new ProxyInventory(Collections.emptyList());
+		STORE = null;
+		TYPE = null;
 	}
 
 	public ProxyIpPool(ConnectionImpl<ProxyIP> connectionImpl, int maxNaturalResources) {
-		super(connectionImpl, maxNaturalResources);
+		this(connectionImpl,maxNaturalResources,maxNaturalResources);
 	}
 
 	public ProxyIpPool(ConnectionImpl<ProxyIP> connectionImpl, int coreNaturalResources, int maxNaturalResources) {
-		super(connectionImpl, coreNaturalResources, maxNaturalResources);
+		this(connectionImpl,coreNaturalResources,maxNaturalResources,maxNaturalResources);
 	}
 
 	public ProxyIpPool(ConnectionImpl<ProxyIP> connectionImpl, int coreNaturalResources, int maxNaturalResources, int queueLength) {
-		super(connectionImpl, coreNaturalResources, maxNaturalResources, queueLength);
+		super(connectionImpl,coreNaturalResources,maxNaturalResources,queueLength);
+		INVENTORY = new ProxyInventory(Collections.emptyList());
+		STORE = null;
+		TYPE = null;
+	}
+
+	/**
+	 * @param inventory 库存
+	 * @param store 代理IP存储
+	 * @param type IP类型
+	 */
+	private ProxyIpPool(ProxyInventory inventory, ProxyStore store, String type) {
+		super(inventory::next,inventory.snapshot().size());
+		INVENTORY = inventory;
+		STORE = store;
+		TYPE = type;
 	}
 
 	/**
@@ -65,48 +131,40 @@ public class ProxyIpPool extends CustomConnectPool<ProxyIP> {
 		setTimeUnit(timeUnit);
 		// cpu核心数
 		int cpuCores = Runtime.getRuntime().availableProcessors();
-		setThreadPool(new ScheduledThreadPoolExecutor(2 * cpuCores + 1,Executors.defaultThreadFactory()));
+		setThreadPool(new CustomThreadPool(2 * cpuCores + 1));
 	}
 
-	/**
-	 * 链接实现类的资源偏移量
-	 */
-	private static int i;
+	public int getThreshold() {
+		return threshold;
+	}
 
 	/**
-	 * 保存IP类型用于后续向IP池添加IP使用
+	 * 设置更新资源触发阈值
+	 * @param ips IP池最大资源数
+	 * @param threshold 触发值
 	 */
-	private static String type;
-
-	private static void setType(String type) {
-		ProxyIpPool.type = type;
+	public void setThreshold(List<ProxyIP> ips,int threshold) {
+		if (ips.size() > threshold) this.threshold = ips.size() - threshold;
 	}
 
-	private static String getType() {
-		return type;
+	public String getType() {
+		return TYPE;
 	}
 
 	/**
-	 * 更新IP池内资源触发值
+	 * @param primaryLimit 主用层级存放该类型IP数
 	 */
-	private static int threshold;
-
-
-	private static int getThreshold() {
-		return threshold;
+	public void setPrimaryLimit(int primaryLimit) {
+		this.primaryLimit = primaryLimit;
 	}
 
 	/**
-	 * 设置更新资源触发阈值
-	 * @param ips IP池最大资源数
-	 * @param threshold 触发值
+	 * @return 返回当前库存IP
 	 */
-	private static void setThreshold(List<ProxyIP> ips,int threshold) {
-		if (ips.size() > threshold) ProxyIpPool.threshold = ips.size() - threshold;
+	public List<ProxyIP> getIps() {
+		return INVENTORY.snapshot();
 	}
 
-	private static List<ProxyIP> ips;
-
 	/**
 	 * @param i 读取IP数
 	 * @param type 读取IP类型
@@ -114,25 +172,27 @@ public class ProxyIpPool extends CustomConnectPool<ProxyIP> {
 	 * @throws IOException
 	 */
 	public static ProxyIpPool getProxyIpPool(int i,String type) throws IOException {
-		// 获取IP集合
-		ips = getIps(i,type);
-		// 保存IP类型用于后续向IP池添加IP使用
-		setType(type);
-		// 默认触发阈值为IP池内一半IP失效
-		setThreshold(ips,ips.size() / 2);
-		return new ProxyIpPool(() -> {
-			try {
-				return ips.get(ProxyIpPool.i++);
-			} catch (Exception e) {
-				// 异常持久化保存IP
-				persistenceIps(ips,zyPath,false,ProxyIpPool.j);
-				return null;
-			}
-		},ips.size());
+		return getProxyIpPool(i,type,STORE_PATH);
 	}
 
-	private static ProxyIpPool getTestProxyIpPool(List<ProxyIP> ips) {
-		return new ProxyIpPool(() -> ips.get(i++),ips.size());
+	/**
+	 * 创建代理IP池:每个IP池独立持有库存、触发值与IP类型,可按类型或目标网站同时运行多个IP池
+	 * @param i 读取IP数
+	 * @param type 读取IP类型
+	 * @param storePath 代理IP存储文件
+	 * @return 代理IP池
+	 * @throws IOException
+	 */
+	public static ProxyIpPool getProxyIpPool(int i,String type,String storePath) throws IOException {
+		ProxyStore store = openStore(storePath);
+		// 获取IP集合
+		List<ProxyIP> ips = getIps(store,i,type,PRIMARY_LIMIT);
+		ProxyIpPool proxyIpPool = new ProxyIpPool(new ProxyInventory(ips),store,type);
+		// 默认触发阈值为IP池内一半IP失效
+		proxyIpPool.setThreshold(ips,ips.size() / 2);
+		// 已筛选的IP直接参与健康选择
+		proxyIpPool.BALANCER.update(ips);
+		return proxyIpPool;
 	}
 
 	/**
@@ -140,349 +200,267 @@ public class ProxyIpPool extends CustomConnectPool<ProxyIP> {
 	 * @param ips IP集合
 	 */
 	public static List<ProxyIP> testIP(List<ProxyIP> ips) {
-		return getTestProxyIpPool(ips).updateConnections(ips);
+		return new ProxyValidator().validate(ips);
 	}
 
 	/**
-	 * 记录文件存放IP数
-	 */
-	private static String path = IOUtil.path("/java/src/main/java/javalanguage/utils/web/ip/","README.txt");
-
-	/**
-	 * 主用文件
-	 */
-	private static String zyPath = IOUtil.path("/java/src/main/java/javalanguage/utils/web/ip/","主用.txt");
-
-	/**
-	 * 备用文件
-	 */
-	private static String byPath = IOUtil.path("/java/src/main/java/javalanguage/utils/web/ip/","备用.txt");
-
-	/**
-	 * 默认主用文件存放IP数
+	 * @param path 存储文件路径
+	 * @return 返回代理IP存储,首次打开空的默认存储时导入旧版文本文件
+	 * @throws IOException
 	 */
-	private static int j = 50;
-
-	public static void setI(int i) {
-		j = i;
+	private static ProxyStore openStore(String path) throws IOException {
+		ProxyStore store = STORES.get(path);
+		if (store != null) return store;
+		synchronized (STORES) {
+			store = STORES.get(path);
+			if (store != null) return store;
+			store = new ProxyStore(path);
+			if (store.size() == 0 && path.equals(STORE_PATH)) {
+				store.importText(ZY_PATH,ProxyStore.PRIMARY);
+				store.importText(BY_PATH,ProxyStore.BACKUP);
+			}
+			STORES.put(path,store);
+			return store;
+		}
 	}
 
 	/**
-	 * 追加持久化IP
+	 * 追加持久化IP到默认存储
 	 */
 	public static void persistenceIps(List<ProxyIP> ips) throws IOException {
+		ProxyStore store = openStore(STORE_PATH);
 		// 筛选可持久化的IP
-		ips = testIP(ips);
-		// 写入主用文件ip
-		boolean b = persistenceIps(ips, zyPath, true, j);
-		// 判断主用文件记录IP数是否到达上限
-		if (b) persistenceIps(ips,byPath, true, j);
+		List<ProxyIP> valid = testIP(ips);
+		synchronized (store) {
+			persistenceIps(store,valid,null,PRIMARY_LIMIT);
+		}
 	}
 
 	/**
-	 * 更新持久化IP
+	 * 更新持久化IP:该类型主用层级更新为当前有效IP,用于整体刷新
+	 * @param store 代理IP存储
 	 * @param ips IP集合
+	 * @param type IP类型
+	 * @param limit 主用层级存放该类型IP数
 	 * @throws IOException
 	 */
-	private static void flushPersistenceIps(List<ProxyIP> ips) throws IOException {
-		// 跳过封装方法默认设置
-		boolean b = persistenceIps(ips, zyPath, false,ProxyIpPool.i);
-		// 判断主用文件记录IP数是否到达上限
-		if (b) persistenceIps(ips,byPath, true, i);
-	}
-
-	/**
-	 * 持久化IP
-	 * @param ips IP集合
-	 * @param path 存放IP文件路径
-	 * @param append 设置输出流是否为追加
-	 * @param i 指定文件可存放IP数上限
-	 */
-	private static boolean persistenceIps(List<ProxyIP> ips,String path,boolean append,int i) throws IOException {
-		String zy = "主用文件IP数";
-		String by = "备用文件IP数";
-		// 累计持久化IP数
-		int j = 0;
-		// 更新i值:获取已持久化IP数
-		if (path.endsWith("主用.txt")) j = getPersistenceIps(zy);
-		if (path.endsWith("备用.txt")) j = getPersistenceIps(by);
-		try (BufferedWriter bufferedWriter = getWriterOutputStream(path,append)) {
-			for (ProxyIP proxyIP : ips) {
-				if (j == i && path.endsWith("主用.txt")) {
-					isPersistenceIps(zy,j);
-					return true;
-				}
-				bufferedWriter.write(proxyIP.getIp() + ":" + proxyIP.getPort() + ":" + proxyIP.getType());
-				// 插入换行符
-				bufferedWriter.newLine();
-				// 累计新添加IP数
-				j++;
-			}
+	private static void flushPersistenceIps(ProxyStore store,List<ProxyIP> ips,String type,int limit) throws IOException {
+		// 删除与补充在同一存储锁内完成,避免多个IP池交错更新
+		synchronized (store) {
+			store.retain(ProxyStore.PRIMARY,type,ips);
+			persistenceIps(store,ips,type,limit);
 		}
-		return false;
 	}
 
 	/**
-	 * 处理字符串数组
+	 * 增量更新持久化IP:只删除校验未通过的IP,有效IP按主用层级上限持久化
+	 * 后台维护每轮只校验一批IP,不能按有效集合保留,否则未参与本轮校验的IP被删除
+	 * @param store 代理IP存储
+	 * @param valid 有效IP集合
+	 * @param rejected 校验未通过IP集合
+	 * @param type IP类型
+	 * @param limit 主用层级存放该类型IP数
+	 * @throws IOException
 	 */
-	private static String[] split;
-
-	private static Map<String,String> strings = new HashMap<>();
+	private static void mergePersistenceIps(ProxyStore store,List<ProxyIP> valid,List<ProxyIP> rejected,String type,int limit) throws IOException {
+		synchronized (store) {
+			store.removeAll(rejected);
+			persistenceIps(store,valid,type,limit);
+		}
+	}
 
 	/**
-	 * 查看记录文件存放IP数
-	 * @return 记录文件存放IP总数
-	 * @throws IOException
+	 * 持久化IP:该类型主用层级达到上限后放入备用层级
+	 * @param store 代理IP存储
+	 * @param ips IP集合
+	 * @param type IP类型
+	 * @param limit 主用层级存放该类型IP数
 	 */
-	public static int getPersistenceIps() throws IOException {
-		return getPersistenceIps("主用文件IP数")+ getPersistenceIps("备用文件IP数");
+	private static void persistenceIps(ProxyStore store,List<ProxyIP> ips,String type,int limit) throws IOException {
+		List<ProxyIP> primary = new ArrayList<>();
+		List<ProxyIP> backup = new ArrayList<>();
+		int free = limit - store.size(ProxyStore.PRIMARY,type);
+		for (ProxyIP proxyIP : ips) {
+			if (store.getTier(proxyIP) == ProxyStore.PRIMARY) continue;
+			if (free-- > 0) primary.add(proxyIP);
+			else backup.add(proxyIP);
+		}
+		store.addAll(primary,ProxyStore.PRIMARY);
+		store.addAll(backup,ProxyStore.BACKUP);
 	}
 
 	/**
-	 * 查看记录文件存放IP数
-	 * @param file 文件
-	 * @return 返回文件记录IP数
+	 * 查看默认存储IP数
+	 * @return 存储IP总数
 	 * @throws IOException
 	 */
-	private static int getPersistenceIps(String file) throws IOException {
-		return isPersistenceIps(file,0);
+	public static int getPersistenceIps() throws IOException {
+		return openStore(STORE_PATH).size();
 	}
 
 	/**
-	 * 记录文件存放IP数
-	 * @param file 文件
-	 * @param i 新加入IP数
-	 * @return 返回文件记录IP数
+	 * 从默认存储读取IP
+	 * @param i 读取IP数
+	 * @param type 读取IP类型
+	 * @return IP集合
 	 * @throws IOException
 	 */
-	private static int isPersistenceIps(String file,int i) throws IOException {
-		try (BufferedReader bufferedReader = getReaderInputStream(path)) {
-			while ((string = bufferedReader.readLine()) != null) {
-				split = string.split(":");
-				// 判断新加入IP数为0则返回文件记录IP数
-				if (i == 0 && split[0].equals(file)) {
-					strings.clear();
-					return Integer.parseInt(split[1]);
-				}
-				strings.put(split[0],split[1]);
-			}
-		}
-		try (BufferedWriter bufferedWriter = getWriterOutputStream(path)) {
-			boolean is = true;
-			for (Map.Entry<String,String> entry: strings.entrySet()) {
-				// 不匹配值原路写回
-				if (!entry.getKey().equals(file)) {
-					bufferedWriter.write(entry.getKey() + ":" + entry.getValue());
-					bufferedWriter.newLine();
-				}
-				// 匹配值更新一次
-				if (!is) continue;
-				bufferedWriter.write(file + ":" + i);
-				bufferedWriter.newLine();
-				is = false;
-			}
-			strings.clear();
-		}
-		return i;
+	public static List<ProxyIP> getIps(int i,String type) throws IOException {
+		return getIps(openStore(STORE_PATH),i,type,PRIMARY_LIMIT);
 	}
 
 	/**
-	 * 读取IP
+	 * 读取IP:先读取主用层级,有效IP不足时按类型索引继续读取备用层级
+	 * @param store 代理IP存储
 	 * @param i 读取IP数
 	 * @param type 读取IP类型
+	 * @param limit 主用层级存放该类型IP数
 	 * @return IP集合
 	 * @throws IOException
 	 */
-	public static List<ProxyIP> getIps(int i,String type) throws IOException {
-		// 读取主用文件ip
-		List<ProxyIP> ips = getIps(new ArrayList<>(),zyPath,i,type);
-		while (true) {
-			// 获取IP后筛选一遍保证放到IP池中可用
-			ips = testIP(ips);
-			if (ips.size() >= i)  break;
-			// 读取备用文件ip
-			getIps(ips, byPath, i - ips.size(), type);
+	private static List<ProxyIP> getIps(ProxyStore store,int i,String type,int limit) throws IOException {
+		// 获取IP后筛选一遍保证放到IP池中可用
+		List<ProxyIP> ips = new ArrayList<>(testIP(store.getIps(ProxyStore.PRIMARY,type,0,i)));
+		int offset = 0;
+		while (ips.size() < i) {
+			// 读取备用层级ip
+			List<ProxyIP> backup = store.getIps(ProxyStore.BACKUP,type,offset,i - ips.size());
+			offset += backup.size();
+			if (!backup.isEmpty()) ips.addAll(testIP(backup));
 			// 判断获取IP是否足够,若不足则库存IP不足
-			if (ips.size() < 50) {
+			if (backup.isEmpty() || ips.size() < 50) {
 				System.err.println("库存IP数小于50,请及时补充");
 				break;
 			}
 		}
-		flushPersistenceIps(ips);
+		flushPersistenceIps(store,ips,type,limit);
 		return ips;
 	}
 
 	/**
-	 * 读取IP
-	 * @param ips ip集合
-	 * @param path 读取路径
-	 * @param i 读取IP数
-	 * @param type IP类型
-	 * @return ip集合
-	 * @throws IOException
+	 * 从存储补充IP:按类型索引依次读取主用与备用层级中未在IP池内的IP,至多补充触发值个
+	 * @param keys IP池内全部IP的ip:端口,补充IP随之加入
+	 * @return 补充IP集合
 	 */
-	private static List<ProxyIP> getIps(List<ProxyIP> ips,String path,int i,String type) throws IOException {
-		int j = 0;
-		try (BufferedReader bufferedReader = getReaderInputStream(path)) {
-			while ((string = bufferedReader.readLine()) != null) {
-				if (j == i) break;
-				split = string.split(":");
-				// 判断IP类型为空或指定类型则放行
-				if (!StringUtil.isNull(type)) if (!type.equals(split[2]))continue;
-				ips.add(new ProxyIP(split[0],Integer.parseInt(split[1]),split[2]));
-				j++;
+	private List<ProxyIP> addIpsPool(Set<String> keys) {
+		List<ProxyIP> list = new ArrayList<>();
+		if (STORE == null) return list;
+		for (int tier = ProxyStore.PRIMARY; tier <= ProxyStore.BACKUP && list.size() < threshold; tier++) {
+			for (ProxyIP proxyIP : STORE.getIps(tier,TYPE,0,Integer.MAX_VALUE)) {
+				if (list.size() >= threshold) break;
+				if (keys.add(ProxyInventory.key(proxyIP))) list.add(proxyIP);
 			}
 		}
-		return ips;
+		return list;
 	}
 
 	/**
-	 * 更新资源后补充足够IP到IP池内
-	 * @param ips 更新IP集合
-	 * @return 补充IP集合
+	 * 代理IP健康选择器
 	 */
-	private List<ProxyIP> addIpsPool(List<ProxyIP> ips) {
-		return CodeOptimizeUtil.tryCatch(() -> {
-			flushPersistenceIps(ips);
-			// 跳过封装方法默认设置
-			return getIps(ips,zyPath,ips.size() + getThreshold(),getType());
-		});
-	}
-
-	private ExecutorService threadPool;
+	private final ProxyBalancer BALANCER = new ProxyBalancer();
 
 	/**
-	 * 创建一个计数器对象设置初始值
+	 * 代理IP校验引擎:探测结果记录到健康统计
 	 */
-	private CountDownLatch countDownLatch;
+	private ProxyValidator validator = newValidator(new ProxyValidator());
+
+	public ProxyValidator getValidator() {
+		return validator;
+	}
 
 	/**
-	 * 更新核心资源:实现方式:并发测试IP是否有效
-	 * @param connections 核心资源集合
-	 * @return 更新资源集合
+	 * @param validator 代理IP校验引擎:配置并发探测数与探测超时时间
 	 */
-	@Override
-	public List<ProxyIP> updateConnections(List<ProxyIP> connections) {
-		threadPool = getThreadPool();
-		// 单线程操作
-		if (threadPool == null) {
-			ips = new ArrayList<>();
-			for (ProxyIP proxyIP: connections) {
-				runUpdateConnection(proxyIP);
-			}
-			if (ips.size() <= getThreshold()) ips = addIpsPool(ips);
-			return ips;
-		}
-		// 并发转为线程安全集合操作
-		ips = Collections.synchronizedList(new ArrayList<>());
-		countDownLatch = new CountDownLatch(connections.size());
-		for (ProxyIP proxyIP : connections) {
-			threadPool.execute(new RunUpdateConnections(proxyIP));
-		}
-		// 设置在另一个线程,计数器归零前阻塞该线程
-		CodeOptimizeUtil.tryCatch(() -> countDownLatch.await());
-		threadPool.shutdown();
-		// 触发阈值补充IP
-		if (ips.size() <= getThreshold()) ips = addIpsPool(ips);
-		return ips;
+	public void setValidator(ProxyValidator validator) {
+		this.validator = newValidator(validator);
 	}
 
-	private class RunUpdateConnections implements Runnable {
-
-		private ProxyIP proxyIP;
-
-		public RunUpdateConnections(ProxyIP proxyIP) {
-			this.proxyIP = proxyIP;
-		}
+	private ProxyValidator newValidator(ProxyValidator validator) {
+		validator.setListener((proxyIP,valid,latency) -> BALANCER.report(proxyIP,valid,latency,TimeUnit.NANOSECONDS));
+		return validator;
+	}
 
-		@Override
-		public void run() {
-			runUpdateConnection(proxyIP);
-			// 设置在线程类上每调用一次减1
-			countDownLatch.countDown();
-		}
+	public ProxyBalancer getBalancer() {
+		return BALANCER;
 	}
 
 	/**
-	 * 可重入锁对象
+	 * 按健康统计选择代理:优先延迟低且成功率高的未剔除代理
+	 * 尚无可选代理时从连接池获取并加入均衡器后立即归还,代理由均衡器共享而非独占
+	 * @return 返回代理IP
+	 * @throws Exception
 	 */
-	private final ReentrantLock LOCK = new ReentrantLock();
+	public ProxyIP select() throws Exception {
+		ProxyIP proxyIP = BALANCER.select();
+		if (proxyIP != null) return proxyIP;
+		proxyIP = getConnection();
+		if (proxyIP != null) {
+			BALANCER.add(proxyIP);
+			setConnection(proxyIP);
+		}
+		return proxyIP;
+	}
 
 	/**
-	 * 更新资源调用方法
-	 * @param proxyIP IP对象
+	 * 记录经代理请求的结果:连续失败的代理被剔除,剔除时长指数退避
+	 * @param proxyIP 代理IP
+	 * @param success 是否成功
+	 * @param latency 请求延迟
+	 * @param timeUnit 延迟单位
 	 */
-	private void runUpdateConnection(ProxyIP proxyIP) {
-		proxyIP = updateConnections1(proxyIP);
-		// 判断code码确定方案1可用
-		if (proxyIP.getPort() != 200) proxyIP = updateConnections2(proxyIP);
-		// 确定若走方案2获得IP是否可用并走方案1获得IP是否可用
-		if (proxyIP != null && !StringUtil.isNull(proxyIP.getIp())) ips.add(proxyIP);
+	public void report(ProxyIP proxyIP, boolean success, long latency, TimeUnit timeUnit) {
+		BALANCER.report(proxyIP,success,latency,timeUnit);
 	}
 
-	private http<String> http = WebUtil.getHttp(null,"");
-
-	private HttpClient.Builder httpClient;
-
-	private String url = "http://icanhazip.com/";
-
-	private HttpResponse<String> httpResponse;
-
 	/**
-	 * 方案1:采用请求网站返回请求IP测试IP是否有效
-	 * @param proxyIP 代理IP
-	 * @return 代理IP or null
+	 * 校验一批空闲代理:并发测试IP是否有效
+	 * 参数为连接池本轮轮转预留的一批空闲代理,不是整个IP池;无效代理由连接池剔除
+	 * 剔除后IP池剩余代理数达到触发值时从存储补充库存,补充代理由连接池补足核心资源时取出
+	 * @param connections 本轮待校验空闲代理集合
+	 * @return 返回该批中有效代理集合
 	 */
-	private ProxyIP updateConnections1(ProxyIP proxyIP) {
-		LOCK.lock();
-		try {
-			httpClient = http.getHttpClient();
-			// 配置代理
-			httpClient.proxy(ProxySelector.of(new InetSocketAddress(proxyIP.getIp(),proxyIP.getPort())));
-			httpResponse = http.httpRequest(url, "get","", false);
-		} catch (URISyntaxException e) {
-			throw new RuntimeException(e);
-		} finally {
-			LOCK.unlock();
+	@Override
+	public List<ProxyIP> updateConnections(List<ProxyIP> connections) {
+		synchronized (REFRESH) {
+			List<ProxyIP> valid = validator.validate(connections);
+			List<ProxyIP> evicted = rejected(connections,valid);
+			// 存储中只删除本轮校验未通过的IP
+			if (STORE != null) CodeOptimizeUtil.tryCatch(() -> mergePersistenceIps(STORE,valid,evicted,TYPE,primaryLimit));
+			// 剔除后IP池内全部IP:连接池内资源与库存中等待取出的IP
+			Set<String> keys = new HashSet<>();
+			for (ProxyIP proxyIP : getConnections()) {
+				keys.add(ProxyInventory.key(proxyIP));
+			}
+			for (ProxyIP proxyIP : INVENTORY.snapshot()) {
+				keys.add(ProxyInventory.key(proxyIP));
+			}
+			for (ProxyIP proxyIP : evicted) {
+				keys.remove(ProxyInventory.key(proxyIP));
+			}
+			// 触发阈值补充IP
+			List<ProxyIP> added = keys.size() <= threshold ? addIpsPool(keys) : Collections.emptyList();
+			INVENTORY.merge(evicted,added);
+			// 只移除本轮被剔除代理,其余代理保留健康统计
+			List<ProxyIP> selectable = new ArrayList<>(valid);
+			selectable.addAll(added);
+			BALANCER.merge(selectable,evicted);
+			return valid;
 		}
-		int code = httpResponse.statusCode();
-		// 返回代理IP则有效,否则无效
-		if (code == 200 && httpResponse.body().equals(proxyIP.getIp())) return proxyIP;
-		return new ProxyIP("",code,"");
 	}
 
-	private Process exec;
-
-	private BufferedReader bufferedReader;
-
-	private StringBuilder s;
-
 	/**
-	 * 方案2:采用ping命令测试IP是否有效
-	 * @param proxyIP 代理IP
-	 * @return 代理IP or null
+	 * @param connections 本轮待校验代理集合
+	 * @param valid 有效代理集合
+	 * @return 返回校验未通过的代理集合
 	 */
-	private ProxyIP updateConnections2(ProxyIP proxyIP) {
-		try {
-			LOCK.lock();
-			// 调用cmd命令检查该IP
-			exec = Runtime.getRuntime().exec("ping " + proxyIP.getIp());
-			bufferedReader = InputTransformation(exec.getInputStream(), "gbk");
-			s = new StringBuilder();
-			while ((read = bufferedReader.read(chars)) != -1) {
-				s.append(new String(chars, 0, read));
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		} finally {
-			LOCK.unlock();
-			IOUtil.close(bufferedReader);
-			// 关闭子进程
-			exec.destroy();
+	private static List<ProxyIP> rejected(List<ProxyIP> connections,List<ProxyIP> valid) {
+		Set<ProxyIP> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+		kept.addAll(valid);
+		List<ProxyIP> rejected = new ArrayList<>();
+		for (ProxyIP proxyIP : connections) {
+			if (!kept.contains(proxyIP)) rejected.add(proxyIP);
 		}
-		// 获取ping结果查看是否有效
-		if (s.lastIndexOf("TTL") != -1) return proxyIP;
-		return null;
+		return rejected;
 	}
 
 	/**
@@ -508,24 +486,22 @@ public class ProxyIpPool extends CustomConnectPool<ProxyIP> {
 	 */
 	public static <T> http<T> updateHttpProxyIP(ProxyIP proxyIP, ProxyHttp<T> proxyHttp) throws Exception {
 		AtomicReference<http<T>> tempHttp = new AtomicReference<>();
-		ThreadUtil.daemonThread(() -> {
-			CodeOptimizeUtil.tryCatch(() -> {
-				while (true) {
-					// 等待代理失效
-					proxyHttp.getTimeUnit().sleep(proxyHttp.getTime());
-					if (proxyIP != null) continue;
-					ProxyIP connection = proxyHttp.getProxyIpPool().getConnection();
-					if (connection == null) {
-						tempHttp.set(null);
-						return;
-					}
-					http<T> http = WebUtil.getHttp(null,proxyHttp.getHttpResponseType());
-					// 配置代理
-					http.getHttpClient().proxy(ProxySelector.of(new InetSocketAddress(connection.getIp(),connection.getPort())));
-					tempHttp.set(http);
-				}
-			});
-		},"更新代理");
+		// 上一个资源对象仍有效时无需更新
+		if (proxyIP != null) return tempHttp.get();
+		// 由共享时间轮按代理失效时间周期更新,选择代理可能等待连接池资源,交由IO执行器执行
+		AtomicReference<TimingWheel.Timeout> timeout = new AtomicReference<>();
+		timeout.set(ThreadUtil.scheduleBlockingWithFixedDelay(() -> CodeOptimizeUtil.tryCatch(() -> {
+			ProxyIP connection = proxyHttp.getProxyIpPool().select();
+			if (connection == null) {
+				tempHttp.set(null);
+				timeout.get().cancel();
+				return;
+			}
+			http<T> http = WebUtil.getHttp(null,proxyHttp.getHttpResponseType());
+			// 配置代理
+			http.getHttpClient().proxy(ProxySelector.of(new InetSocketAddress(connection.getIp(),connection.getPort())));
+			tempHttp.set(http);
+		}),proxyHttp.getTime(),proxyHttp.getTime(),proxyHttp.getTimeUnit()));
 		return tempHttp.get();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package kazusa.web.ip;
+
+/**
+ * 代理IP健康统计:成功率与延迟均为指数加权移动平均,连续失败达到阈值后剔除
+ * 剔除时长按连续剔除次数指数退避,到期后重新参与选择,再次失败立即剔除,成功后清零
+ * @author kazusa
+ * @version 1.0.0
+ * @see ProxyBalancer
+ */
+public class ProxyStats {
+
+	/**
+	 * 移动平均权重:新样本占比
+	 */
+	private static final double ALPHA = 0.2;
+
+	/**
+	 * 成功率下限:避免代价无穷大
+	 */
+	private static final double MIN_SUCCESS_RATE = 0.01;
+
+	/**
+	 * 失败时计入的延迟下限:纳秒,使失败代理不会因未采样延迟而被优先选择
+	 */
+	private static final double FAILURE_LATENCY = 1e9;
+
+	private final ProxyIP PROXY_IP;
+
+	/**
+	 * 延迟移动平均:纳秒,未采样时为0使新代理优先被试用
+	 */
+	private volatile double latency;
+
+	/**
+	 * 成功率移动平均
+	 */
+	private volatile double successRate = 1;
+
+	private long successes;
+
+	private long failures;
+
+	private int consecutiveFailures;
+
+	/**
+	 * 连续剔除次数
+	 */
+	private int ejections;
+
+	/**
+	 * 剔除到期时间:纳秒,0为未剔除
+	 */
+	private volatile long ejectedUntil;
+
+	ProxyStats(ProxyIP proxyIP) {
+		PROXY_IP = proxyIP;
+	}
+
+	/**
+	 * 记录成功
+	 * @param latency 延迟:纳秒
+	 */
+	synchronized void success(long latency) {
+		this.latency = successes + failures == 0 ? latency : this.latency + ALPHA * (latency - this.latency);
+		successRate += ALPHA * (1 - successRate);
+		successes++;
+		consecutiveFailures = 0;
+		ejections = 0;
+		ejectedUntil = 0;
+	}
+
+	/**
+	 * 记录失败
+	 * @param now 当前时间:纳秒
+	 * @param threshold 连续失败剔除阈值
+	 * @param baseEjection 首次剔除时长:纳秒
+	 * @param maxEjection 最大剔除时长:纳秒
+	 * @return 本次失败导致剔除返回true
+	 */
+	synchronized boolean failure(long now, int threshold, long baseEjection, long maxEjection) {
+		successRate -= ALPHA * successRate;
+		// 失败按两倍当前延迟计入
+		latency += ALPHA * (Math.max(2 * latency,FAILURE_LATENCY) - latency);
+		failures++;
+		consecutiveFailures++;
+		// 剔除中的失败不延长剔除时间
+		if (isEjected(now)) return false;
+		// 重新参与选择后再次失败立即剔除
+		if (consecutiveFailures < threshold && ejections == 0) return false;
+		long ejection = baseEjection << Math.min(ejections,30);
+		if (ejection <= 0 || ejection > maxEjection) ejection = maxEjection;
+		ejectedUntil = now + ejection;
+		// 0表示未剔除
+		if (ejectedUntil == 0) ejectedUntil = 1;
+		ejections++;
+		return true;
+	}
+
+	/**
+	 * @param now 当前时间:纳秒
+	 * @return 剔除中返回true
+	 */
+	boolean isEjected(long now) {
+		long until = ejectedUntil;
+		return until != 0 && until - now > 0;
+	}
+
+	/**
+	 * @return 返回选择代价:延迟除以成功率,越小越优
+	 */
+	double cost() {
+		return (latency + 1) / Math.max(successRate,MIN_SUCCESS_RATE);
+	}
+
+	long getEjectedUntil() {
+		return ejectedUntil;
+	}
+
+	public ProxyIP getProxyIP() {
+		return PROXY_IP;
+	}
+
+	/**
+	 * @return 返回延迟移动平均:纳秒
+	 */
+	public long getLatency() {
+		return (long) latency;
+	}
+
+	public double getSuccessRate() {
+		return successRate;
+	}
+
+	public synchronized long getSuccesses() {
+		return successes;
+	}
+
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return 剔除中返回true
+	 */
+	public boolean isEjected() {
+		return isEjected(System.nanoTime());
+	}
+
+	@Override
+	public synchronized String toString() {
+		return PROXY_IP.getIp() + ":" + PROXY_IP.getPort() + " latency=" + getLatency() + ",successRate=" + successRate
+				+ ",successes=" + successes + ",failures=" + failures + ",consecutiveFailures=" + consecutiveFailures + ",ejected=" + isEjected();
+	}
+}
@@ -0,0 +1,518 @@
+package kazusa.web.ip;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * 代理IP存储:二进制追加日志,内存中按层级与类型建立索引
+ * 1、每次添加、移动或删除仅在文件末尾追加一条带CRC32校验的记录,不重写文件
+ * 2、打开时重放日志重建索引,各层级IP数由索引得出,无需单独保存计数,末尾不完整或校验失败的记录视为崩溃残留并截断
+ * 3、失效记录超过有效记录数时压缩:写入临时文件后原子替换
+ * 记录格式:长度(int) + CRC32(int) + 操作(byte) + 层级(byte) + IP(short长度 + UTF-8) + 端口(int) + 类型(short长度 + UTF-8)
+ * @author kazusa
+ * @version 1.0.0
+ * @see ProxyIpPool
+ */
+public class ProxyStore implements Closeable {
+
+	/**
+	 * 主用层级
+	 */
+	public static final int PRIMARY = 0;
+
+	/**
+	 * 备用层级
+	 */
+	public static final int BACKUP = 1;
+
+	/**
+	 * 文件头:"PRXY" + 版本号
+	 */
+	private static final int MAGIC = 0x50525859;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER = 8;
+
+	private static final byte ADD = 1;
+
+	private static final byte REMOVE = 2;
+
+	/**
+	 * 触发压缩的最小记录数
+	 */
+	private static final int COMPACT_THRESHOLD = 1024;
+
+	/**
+	 * 单条记录长度上限
+	 */
+	private static final int MAX_RECORD = 1 << 16;
+
+	private final Path PATH;
+
+	private FileChannel channel;
+
+	/**
+	 * 全部IP:键为ip:端口
+	 */
+	private final Map<String,Entry> ENTRIES = new HashMap<>();
+
+	/**
+	 * 层级索引:按添加顺序
+	 */
+	private final List<Map<String,ProxyIP>> TIERS = new ArrayList<>();
+
+	/**
+	 * 层级内类型索引:类型 -> 按添加顺序的IP
+	 */
+	private final List<Map<String,Map<String,ProxyIP>>> TYPES = new ArrayList<>();
+
+	/**
+	 * 日志记录数
+	 */
+	private long records;
+
+	private static final class Entry {
+
+		private final ProxyIP PROXY_IP;
+
+		private final int TIER;
+
+		private Entry(ProxyIP proxyIP, int tier) {
+			PROXY_IP = proxyIP;
+			TIER = tier;
+		}
+	}
+
+	/**
+	 * 打开存储,文件不存在时创建
+	 * @param path 文件路径
+	 * @throws IOException 文件头不匹配或读写失败
+	 */
+	public ProxyStore(String path) throws IOException {
+		PATH = Paths.get(path);
+		for (int tier = PRIMARY; tier <= BACKUP; tier++) {
+			TIERS.add(new LinkedHashMap<>());
+			TYPES.add(new HashMap<>());
+		}
+		if (PATH.getParent() != null) Files.createDirectories(PATH.getParent());
+		// 压缩中途崩溃残留
+		Files.deleteIfExists(compactPath());
+		channel = FileChannel.open(PATH,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+		load();
+	}
+
+	private Path compactPath() {
+		return PATH.resolveSibling(PATH.getFileName() + ".compact");
+	}
+
+	private static String key(ProxyIP proxyIP) {
+		return proxyIP.getIp() + ":" + proxyIP.getPort();
+	}
+
+	/**
+	 * 重放日志,截断末尾不完整记录
+	 */
+	private void load() throws IOException {
+		long size = channel.size();
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION);
+			header.flip();
+			write(header,0);
+			channel.force(true);
+			return;
+		}
+		if (size > Integer.MAX_VALUE) throw new IOException("代理IP存储文件过大:" + PATH);
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		while (buffer.hasRemaining() && channel.read(buffer,buffer.position()) >= 0);
+		buffer.flip();
+		if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) throw new IOException("非代理IP存储文件:" + PATH);
+		CRC32 crc32 = new CRC32();
+		long valid = HEADER;
+		while (buffer.remaining() >= 8) {
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length <= 0 || length > MAX_RECORD || buffer.remaining() < length) break;
+			ByteBuffer payload = buffer.slice();
+			payload.limit(length);
+			crc32.reset();
+			crc32.update(payload.duplicate());
+			if ((int) crc32.getValue() != checksum) break;
+			apply(payload);
+			buffer.position(buffer.position() + length);
+			valid = buffer.position();
+			records++;
+		}
+		if (valid < size) {
+			System.err.println("代理IP存储末尾存在不完整记录,已截断:" + (size - valid) + "字节");
+			channel.truncate(valid);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * 重放一条记录
+	 * @param payload 记录内容
+	 */
+	private void apply(ByteBuffer payload) {
+		byte op = payload.get();
+		int tier = payload.get();
+		String ip = getString(payload);
+		int port = payload.getInt();
+		String type = getString(payload);
+		ProxyIP proxyIP = new ProxyIP(ip,port,type);
+		if (op == REMOVE) unindex(key(proxyIP));
+		else index(proxyIP,tier);
+	}
+
+	private void index(ProxyIP proxyIP, int tier) {
+		String key = key(proxyIP);
+		unindex(key);
+		ENTRIES.put(key,new Entry(proxyIP,tier));
+		TIERS.get(tier).put(key,proxyIP);
+		TYPES.get(tier).computeIfAbsent(proxyIP.getType(),type -> new LinkedHashMap<>()).put(key,proxyIP);
+	}
+
+	private Entry unindex(String key) {
+		Entry entry = ENTRIES.remove(key);
+		if (entry == null) return null;
+		TIERS.get(entry.TIER).remove(key);
+		Map<String,Map<String,ProxyIP>> types = TYPES.get(entry.TIER);
+		Map<String,ProxyIP> proxyIPs = types.get(entry.PROXY_IP.getType());
+		proxyIPs.remove(key);
+		if (proxyIPs.isEmpty()) types.remove(entry.PROXY_IP.getType());
+		return entry;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes,StandardCharsets.UTF_8);
+	}
+
+	private static byte[] bytes(String string) {
+		byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) throw new IllegalArgumentException("字符串过长:" + bytes.length + "字节");
+		return bytes;
+	}
+
+	/**
+	 * 编码一条记录追加到缓冲区
+	 */
+	private static void encode(Records out, byte op, int tier, ProxyIP proxyIP) {
+		byte[] ip = bytes(proxyIP.getIp());
+		byte[] type = bytes(proxyIP.getType());
+		int length = 2 + 2 + ip.length + 4 + 2 + type.length;
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		payload.put(op).put((byte) tier);
+		payload.putShort((short) ip.length).put(ip);
+		payload.putInt(proxyIP.getPort());
+		payload.putShort((short) type.length).put(type);
+		payload.flip();
+		CRC32 crc32 = new CRC32();
+		crc32.update(payload.duplicate());
+		out.add(ByteBuffer.allocate(8).putInt(length).putInt((int) crc32.getValue()).flip());
+		out.add(payload);
+	}
+
+	/**
+	 * 待写入记录:合并后一次写入
+	 */
+	private static final class Records {
+
+		private final List<ByteBuffer> BUFFERS = new ArrayList<>();
+
+		private int size;
+
+		private void add(ByteBuffer buffer) {
+			BUFFERS.add(buffer);
+			size += buffer.remaining();
+		}
+
+		private ByteBuffer toBuffer() {
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			for (ByteBuffer part : BUFFERS) {
+				buffer.put(part);
+			}
+			return buffer.flip();
+		}
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer,position);
+		}
+	}
+
+	/**
+	 * 追加记录:一次写入,失败时截断已写入部分
+	 */
+	private void append(Records out, int count) throws IOException {
+		if (count == 0) return;
+		long position = channel.size();
+		try {
+			write(out.toBuffer(),position);
+		} catch (IOException e) {
+			channel.truncate(position);
+			throw e;
+		}
+		records += count;
+	}
+
+	/**
+	 * 索引更新后检查:日志记录数超过有效IP数两倍时压缩
+	 */
+	private void compactIfNeeded() throws IOException {
+		if (records > COMPACT_THRESHOLD && records > 2L * ENTRIES.size()) compact();
+	}
+
+	/**
+	 * 添加IP:已存在时移动到指定层级
+	 * @param proxyIP 代理IP
+	 * @param tier 层级
+	 * @throws IOException
+	 */
+	public synchronized void add(ProxyIP proxyIP, int tier) throws IOException {
+		addAll(Collections.singletonList(proxyIP),tier);
+	}
+
+	/**
+	 * 批量添加IP:已在该层级的IP忽略,其余IP移动或添加到指定层级
+	 * @param proxyIPs 代理IP集合
+	 * @param tier 层级
+	 * @throws IOException
+	 */
+	public synchronized void addAll(Collection<ProxyIP> proxyIPs, int tier) throws IOException {
+		if (tier != PRIMARY && tier != BACKUP) throw new IllegalArgumentException("未知层级:" + tier);
+		Records out = new Records();
+		List<ProxyIP> added = new ArrayList<>();
+		for (ProxyIP proxyIP : proxyIPs) {
+			// 类型为空按空字符串保存
+			if (proxyIP.getType() == null) proxyIP = new ProxyIP(proxyIP.getIp(),proxyIP.getPort(),"");
+			Entry entry = ENTRIES.get(key(proxyIP));
+			if (entry != null && entry.TIER == tier && entry.PROXY_IP.getType().equals(proxyIP.getType())) continue;
+			encode(out,ADD,tier,proxyIP);
+			added.add(proxyIP);
+		}
+		// 写入成功后再更新索引
+		append(out,added.size());
+		for (ProxyIP proxyIP : added) {
+			index(proxyIP,tier);
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * 删除IP
+	 * @param proxyIP 代理IP
+	 * @return 不存在返回false
+	 * @throws IOException
+	 */
+	public synchronized boolean remove(ProxyIP proxyIP) throws IOException {
+		return removeAll(Collections.singletonList(proxyIP)) == 1;
+	}
+
+	/**
+	 * 批量删除IP
+	 * @param proxyIPs 代理IP集合
+	 * @return 返回删除数
+	 * @throws IOException
+	 */
+	public synchronized int removeAll(Collection<ProxyIP> proxyIPs) throws IOException {
+		Records out = new Records();
+		Set<String> removed = new LinkedHashSet<>();
+		for (ProxyIP proxyIP : proxyIPs) {
+			String key = key(proxyIP);
+			Entry entry = ENTRIES.get(key);
+			if (entry == null || removed.contains(key)) continue;
+			encode(out,REMOVE,entry.TIER,entry.PROXY_IP);
+			removed.add(key);
+		}
+		append(out,removed.size());
+		for (String key : removed) {
+			unindex(key);
+		}
+		compactIfNeeded();
+		return removed.size();
+	}
+
+	/**
+	 * 删除层级内指定类型中不在集合中的IP
+	 * @param tier 层级
+	 * @param type IP类型,为空时为全部类型
+	 * @param proxyIPs 保留的代理IP集合
+	 * @return 返回删除数
+	 * @throws IOException
+	 */
+	public synchronized int retain(int tier, String type, Collection<ProxyIP> proxyIPs) throws IOException {
+		Map<String,ProxyIP> tierIps = index(tier,type);
+		if (tierIps == null) return 0;
+		Set<String> keep = new HashSet<>();
+		for (ProxyIP proxyIP : proxyIPs) {
+			keep.add(key(proxyIP));
+		}
+		List<ProxyIP> remove = new ArrayList<>();
+		for (Map.Entry<String,ProxyIP> entry : tierIps.entrySet()) {
+			if (!keep.contains(entry.getKey())) remove.add(entry.getValue());
+		}
+		return removeAll(remove);
+	}
+
+	/**
+	 * @param tier 层级
+	 * @param type IP类型,为空时为全部类型
+	 * @return 返回层级内该类型的索引,不存在返回null
+	 */
+	private Map<String,ProxyIP> index(int tier, String type) {
+		return type == null || type.isEmpty() ? TIERS.get(tier) : TYPES.get(tier).get(type);
+	}
+
+	/**
+	 * 按类型索引读取IP
+	 * @param tier 层级
+	 * @param type IP类型,为空读取全部类型
+	 * @param offset 跳过IP数
+	 * @param n 读取IP数
+	 * @return 返回按添加顺序排列的IP集合
+	 */
+	public synchronized List<ProxyIP> getIps(int tier, String type, int offset, int n) {
+		Map<String,ProxyIP> proxyIPs = index(tier,type);
+		List<ProxyIP> list = new ArrayList<>();
+		if (proxyIPs == null || n <= 0) return list;
+		Iterator<ProxyIP> iterator = proxyIPs.values().iterator();
+		for (int i = 0; i < offset && iterator.hasNext(); i++) {
+			iterator.next();
+		}
+		while (list.size() < n && iterator.hasNext()) {
+			list.add(iterator.next());
+		}
+		return list;
+	}
+
+	/**
+	 * @param proxyIP 代理IP
+	 * @return 返回所在层级,不存在返回-1
+	 */
+	public synchronized int getTier(ProxyIP proxyIP) {
+		Entry entry = ENTRIES.get(key(proxyIP));
+		return entry == null ? -1 : entry.TIER;
+	}
+
+	/**
+	 * @param tier 层级
+	 * @return 返回层级内IP数
+	 */
+	public synchronized int size(int tier) {
+		return TIERS.get(tier).size();
+	}
+
+	/**
+	 * @param tier 层级
+	 * @param type IP类型,为空时为全部类型
+	 * @return 返回层级内该类型IP数
+	 */
+	public synchronized int size(int tier, String type) {
+		Map<String,ProxyIP> proxyIPs = index(tier,type);
+		return proxyIPs == null ? 0 : proxyIPs.size();
+	}
+
+	/**
+	 * @return 返回全部IP数
+	 */
+	public synchronized int size() {
+		return ENTRIES.size();
+	}
+
+	/**
+	 * 压缩:仅保留有效IP写入临时文件,刷盘后原子替换原文件
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		Path temp = compactPath();
+		Records out = new Records();
+		out.add(ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip());
+		for (int tier = PRIMARY; tier <= BACKUP; tier++) {
+			for (ProxyIP proxyIP : TIERS.get(tier).values()) {
+				encode(out,ADD,tier,proxyIP);
+			}
+		}
+		try (FileChannel compacted = FileChannel.open(temp,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = out.toBuffer();
+			while (buffer.hasRemaining()) {
+				compacted.write(buffer);
+			}
+			compacted.force(true);
+		}
+		channel.close();
+		try {
+			Files.move(temp,PATH,StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			channel = FileChannel.open(PATH,StandardOpenOption.READ,StandardOpenOption.WRITE);
+		}
+		records = ENTRIES.size();
+	}
+
+	/**
+	 * 刷盘
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		channel.force(false);
+	}
+
+	/**
+	 * 导入旧版文本文件:每行格式为ip:端口:类型,格式错误的行忽略
+	 * @param path 文本文件路径
+	 * @param tier 层级
+	 * @return 返回导入IP数
+	 * @throws IOException
+	 */
+	public synchronized int importText(String path, int tier) throws IOException {
+		Path text = Paths.get(path);
+		if (!Files.exists(text)) return 0;
+		List<ProxyIP> proxyIPs = new ArrayList<>();
+		try (BufferedReader bufferedReader = Files.newBufferedReader(text,StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = bufferedReader.readLine()) != null) {
+				int first = line.indexOf(':');
+				int second = line.indexOf(':',first + 1);
+				if (first <= 0 || second < 0) continue;
+				try {
+					proxyIPs.add(new ProxyIP(line.substring(0,first),Integer.parseInt(line.substring(first + 1,second).trim()),line.substring(second + 1).trim()));
+				} catch (NumberFormatException e) {
+					System.err.println("忽略格式错误的IP:" + line);
+				}
+			}
+		}
+		int size = size();
+		addAll(proxyIPs,tier);
+		return size() - size;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.force(true);
+		channel.close();
+	}
+}
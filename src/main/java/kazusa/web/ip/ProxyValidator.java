@@ -0,0 +1,268 @@
+package kazusa.web.ip;
+
+import kazusa.thread.ThreadUtil;
+
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 代理IP并发校验引擎:每个代理使用独立的HttpClient异步探测,互不共享可变状态
+ * 全局限制同时进行的探测数,每次探测限时,超出并发数的探测排队等待
+ * 校验方式:
+ * 1、请求返回请求IP的网站,返回代理IP则有效
+ * 2、方案1无效时以TCP连接探测代理端口是否可达,由一个选择器线程同时探测
+ * @author kazusa
+ * @version 1.0.0
+ * @see ProxyIpPool
+ */
+public class ProxyValidator {
+
+	/**
+	 * 返回请求IP的网站
+	 */
+	private final URI URL;
+
+	/**
+	 * 全局最大同时探测数
+	 */
+	private final int MAX_IN_FLIGHT;
+
+	/**
+	 * 每次探测超时时间
+	 */
+	private final Duration TIMEOUT;
+
+	/**
+	 * HttpClient异步回调执行器:null使用HttpClient默认执行器
+	 */
+	private final Executor EXECUTOR;
+
+	/**
+	 * TCP连接探测器
+	 */
+	private final ConnectProber PROBER;
+
+	/**
+	 * 等待探测
+	 */
+	private final Queue<Probe> WAITING = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 进行中探测数
+	 */
+	private final AtomicInteger IN_FLIGHT = new AtomicInteger(0);
+
+	/**
+	 * 启动循环进入次数:保证同一时间只有一个线程启动探测,同步完成的探测不会递归启动
+	 */
+	private final AtomicInteger WIP = new AtomicInteger(0);
+
+	public ProxyValidator() {
+		this(64,5,TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param maxInFlight 全局最大同时探测数
+	 * @param timeout 每次探测超时时间
+	 * @param timeUnit 超时时间单位
+	 */
+	public ProxyValidator(int maxInFlight, long timeout, TimeUnit timeUnit) {
+		this("http://icanhazip.com/",maxInFlight,timeout,timeUnit,null,ConnectProber.getShared());
+	}
+
+	/**
+	 * @param url 返回请求IP的网站
+	 * @param maxInFlight 全局最大同时探测数
+	 * @param timeout 每次探测超时时间
+	 * @param timeUnit 超时时间单位
+	 * @param executor HttpClient异步回调执行器:不可使用调用方会阻塞等待探测结果的执行器,否则回调无线程执行导致探测超时;null使用HttpClient默认执行器
+	 * @param prober TCP连接探测器
+	 */
+	public ProxyValidator(String url, int maxInFlight, long timeout, TimeUnit timeUnit, Executor executor, ConnectProber prober) {
+		if (maxInFlight <= 0) throw new IllegalArgumentException("最大同时探测数需大于0");
+		if (timeout <= 0) throw new IllegalArgumentException("探测超时时间需大于0");
+		URL = URI.create(url);
+		MAX_IN_FLIGHT = maxInFlight;
+		TIMEOUT = Duration.ofNanos(timeUnit.toNanos(timeout));
+		EXECUTOR = executor;
+		PROBER = prober;
+	}
+
+	/**
+	 * 探测结果监听器
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * @param proxyIP 代理IP
+		 * @param valid 是否有效
+		 * @param latency 方案1请求延迟:纳秒,方案1无效时为整次探测耗时
+		 */
+		void probed(ProxyIP proxyIP, boolean valid, long latency);
+	}
+
+	private volatile Listener listener;
+
+	/**
+	 * @param listener 探测结果监听器:如将探测延迟与结果记录到代理健康统计
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * 一次探测
+	 */
+	private final class Probe {
+
+		private final ProxyIP PROXY_IP;
+
+		private final CompletableFuture<ProxyIP> FUTURE = new CompletableFuture<>();
+
+		private Probe(ProxyIP proxyIP) {
+			PROXY_IP = proxyIP;
+		}
+
+		private void start() {
+			long start = System.nanoTime();
+			long[] latency = {-1};
+			CompletableFuture<Boolean> valid;
+			try {
+				valid = request(PROXY_IP).thenCompose(ok -> {
+					if (!ok) return connect(PROXY_IP);
+					latency[0] = System.nanoTime() - start;
+					return CompletableFuture.completedFuture(true);
+				});
+			} catch (RuntimeException e) {
+				// 如端口超出范围
+				valid = CompletableFuture.completedFuture(false);
+			}
+			valid.whenComplete((ok,throwable) -> {
+				IN_FLIGHT.decrementAndGet();
+				boolean result = throwable == null && ok;
+				Listener current = listener;
+				if (current != null) {
+					try {
+						current.probed(PROXY_IP,result,latency[0] >= 0 ? latency[0] : System.nanoTime() - start);
+					} catch (RuntimeException e) {
+						System.err.println("探测结果监听器异常:" + e);
+					}
+				}
+				FUTURE.complete(result ? PROXY_IP : null);
+				drain();
+			});
+		}
+	}
+
+	/**
+	 * 探测代理IP
+	 * @param proxyIP 代理IP
+	 * @return 返回异步结果:有效为代理IP,无效为null,不会异常结束
+	 */
+	public CompletableFuture<ProxyIP> probe(ProxyIP proxyIP) {
+		Probe probe = new Probe(proxyIP);
+		WAITING.add(probe);
+		drain();
+		return probe.FUTURE;
+	}
+
+	/**
+	 * 并发校验代理IP
+	 * @param proxyIPs 代理IP集合
+	 * @return 返回异步结果:按原顺序排列的有效代理IP集合
+	 */
+	public CompletableFuture<List<ProxyIP>> validateAsync(Collection<ProxyIP> proxyIPs) {
+		List<CompletableFuture<ProxyIP>> futures = new ArrayList<>(proxyIPs.size());
+		for (ProxyIP proxyIP : proxyIPs) {
+			futures.add(probe(proxyIP));
+		}
+		return ThreadUtil.allOf(futures).thenApply(results -> {
+			List<ProxyIP> list = new ArrayList<>(results.size());
+			for (ProxyIP proxyIP : results) {
+				if (proxyIP != null) list.add(proxyIP);
+			}
+			return list;
+		});
+	}
+
+	/**
+	 * 并发校验代理IP并等待全部探测结束
+	 * @param proxyIPs 代理IP集合
+	 * @return 返回按原顺序排列的有效代理IP集合
+	 */
+	public List<ProxyIP> validate(Collection<ProxyIP> proxyIPs) {
+		return validateAsync(proxyIPs).join();
+	}
+
+	/**
+	 * @return 返回进行中探测数
+	 */
+	public int getInFlight() {
+		return IN_FLIGHT.get();
+	}
+
+	/**
+	 * @return 返回等待探测数
+	 */
+	public int getWaiting() {
+		return WAITING.size();
+	}
+
+	/**
+	 * 在并发数限制内启动等待中的探测
+	 */
+	private void drain() {
+		if (WIP.getAndIncrement() != 0) return;
+		do {
+			while (IN_FLIGHT.get() < MAX_IN_FLIGHT) {
+				Probe probe = WAITING.poll();
+				if (probe == null) break;
+				IN_FLIGHT.incrementAndGet();
+				probe.start();
+			}
+		} while (WIP.decrementAndGet() != 0);
+	}
+
+	/**
+	 * 方案1:使用该代理独立的HttpClient请求返回请求IP的网站
+	 * @param proxyIP 代理IP
+	 * @return 返回代理IP则完成为true
+	 */
+	private CompletableFuture<Boolean> request(ProxyIP proxyIP) {
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.proxy(ProxySelector.of(new InetSocketAddress(proxyIP.getIp(),proxyIP.getPort())))
+				.connectTimeout(TIMEOUT);
+		if (EXECUTOR != null) builder.executor(EXECUTOR);
+		HttpClient httpClient = builder.build();
+		HttpRequest httpRequest = HttpRequest.newBuilder(URL).timeout(TIMEOUT).GET().build();
+		return httpClient.sendAsync(httpRequest,HttpResponse.BodyHandlers.ofString())
+				// 连接与响应超时之外兜底限制整次请求时长
+				.orTimeout(TIMEOUT.toNanos() * 2,TimeUnit.NANOSECONDS)
+				.handle((httpResponse,throwable) -> throwable == null && httpResponse.statusCode() == 200 && httpResponse.body().trim().equals(proxyIP.getIp()));
+	}
+
+	/**
+	 * 方案2:方案1无效时以TCP连接探测代理端口是否可达
+	 * @param proxyIP 代理IP
+	 * @return 返回可建立连接则完成为true
+	 */
+	private CompletableFuture<Boolean> connect(ProxyIP proxyIP) {
+		if (proxyIP.getPort() < 0 || proxyIP.getPort() > 0xFFFF) return CompletableFuture.completedFuture(false);
+		return PROBER.probe(new InetSocketAddress(proxyIP.getIp(),proxyIP.getPort()),TIMEOUT.toNanos(),TimeUnit.NANOSECONDS);
+	}
+}